@@ -0,0 +1,37 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-size list of JSON decimals backed by a double[]
+ */
+public class DoubleArrayList extends AbstractList<Object> implements RandomAccess {
+    private final double[] values;
+    private final int size;
+
+    DoubleArrayList(double[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        return getDouble(index);
+    }
+
+    public double getDouble(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,522 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A parsed document in a compact binary form that is written once and reloaded without parsing
+ * Opening a file maps it read-only and decodes only the key dictionary; values are then read
+ * in place, addressed by byte offset like JSONTape addresses tape indexes, and toObject gives
+ * back the Map/List form JSONParser.parse returns.
+ *
+ * Layout: the magic "TJB" and a version byte, a varint key count, each distinct object key as a
+ * varint length and its UTF-8 bytes, then the root value. Each value starts with a tag byte:
+ *   '{' / '['  varint count, 4-byte little-endian body length, then the members
+ *              (varint key id followed by the value) or the elements
+ *   '"'        varint length and UTF-8 bytes
+ *   'l'        zigzag varint;  'd'  8-byte little-endian double bits
+ *   'i' / 'e'  BigInteger / BigDecimal as a varint length and decimal text
+ *   't' 'f' 'n'
+ * Offsets are ints, so a file is limited to 2 GB.
+ */
+public class JSONBinary {
+    private static final int MAGIC = 'T' | 'J' << 8 | 'B' << 16 | 1 << 24;
+
+    private final ByteBuffer data;
+    private final String[] keys;
+    private final Map<String, Integer> keyIds;
+    private final int root;
+
+    private JSONBinary(ByteBuffer data) {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < 5 || data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a JSONBinary encoding");
+        }
+
+        int[] cursor = {4};
+        int count = (int) readVarint(cursor);
+        keys = new String[count];
+        keyIds = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int length = (int) readVarint(cursor);
+            keys[i] = utf8(cursor[0], length);
+            keyIds.put(keys[i], i);
+            cursor[0] += length;
+        }
+        root = cursor[0];
+    }
+
+    /**
+     * Map a file written by write; the mapping stays valid after the channel is closed
+     */
+    public static JSONBinary open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file);
+            }
+            return new JSONBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read an encoding held in memory, between the buffer's position and limit
+     */
+    public static JSONBinary wrap(ByteBuffer buffer) {
+        return new JSONBinary(buffer.slice());
+    }
+
+    public static JSONBinary wrap(byte[] encoded) {
+        return new JSONBinary(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Encode a Map/List value as returned by JSONParser.parse
+     */
+    public static byte[] encode(Object value) {
+        return new Encoder().encode(value);
+    }
+
+    public static void write(Object value, Path file) throws IOException {
+        Files.write(file, encode(value));
+    }
+
+    public static void write(Object value, OutputStream out) throws IOException {
+        out.write(encode(value));
+    }
+
+    /**
+     * Offset of the root value
+     */
+    public int root() {
+        return root;
+    }
+
+    public JSONTape.Type type(int offset) {
+        switch (tag(offset)) {
+            case '{':
+                return JSONTape.Type.OBJECT;
+            case '[':
+                return JSONTape.Type.ARRAY;
+            case '"':
+                return JSONTape.Type.STRING;
+            case 'l':
+            case 'i':
+                return JSONTape.Type.LONG;
+            case 'd':
+            case 'e':
+                return JSONTape.Type.DOUBLE;
+            case 't':
+                return JSONTape.Type.TRUE;
+            case 'f':
+                return JSONTape.Type.FALSE;
+            case 'n':
+                return JSONTape.Type.NULL;
+            default:
+                throw new IllegalArgumentException("No value starts at offset " + offset);
+        }
+    }
+
+    /**
+     * Offset of the value following the one at offset
+     */
+    public int next(int offset) {
+        int[] cursor = {offset + 1};
+        switch (tag(offset)) {
+            case '{':
+            case '[':
+                readVarint(cursor);
+                return cursor[0] + 4 + data.getInt(cursor[0]);
+            case '"':
+            case 'i':
+            case 'e': {
+                int length = (int) readVarint(cursor);
+                return cursor[0] + length;
+            }
+            case 'l':
+                readVarint(cursor);
+                return cursor[0];
+            case 'd':
+                return offset + 9;
+            case 't':
+            case 'f':
+            case 'n':
+                return offset + 1;
+            default:
+                throw new IllegalArgumentException("No value starts at offset " + offset);
+        }
+    }
+
+    /**
+     * Number of members or elements of the container at offset
+     */
+    public int size(int offset) {
+        char tag = tag(offset);
+        if (tag != '{' && tag != '[') {
+            throw new IllegalArgumentException("Not a container at offset " + offset);
+        }
+        int[] cursor = {offset + 1};
+        return (int) readVarint(cursor);
+    }
+
+    /**
+     * Offset of the value of the given member of the object at offset, or -1
+     */
+    public int field(int offset, String key) {
+        expect(offset, '{');
+        Integer id = keyIds.get(key);
+        if (id == null) {
+            return -1;
+        }
+
+        int[] cursor = {offset + 1};
+        int count = (int) readVarint(cursor);
+        cursor[0] += 4;
+        for (int i = 0; i < count; i++) {
+            int keyId = (int) readVarint(cursor);
+            if (keyId == id) {
+                return cursor[0];
+            }
+            cursor[0] = next(cursor[0]);
+        }
+        return -1;
+    }
+
+    /**
+     * Offset of element n of the array at offset, or -1 if out of range
+     */
+    public int element(int offset, int n) {
+        expect(offset, '[');
+        int[] cursor = {offset + 1};
+        int count = (int) readVarint(cursor);
+        if (n < 0 || n >= count) {
+            return -1;
+        }
+
+        int i = cursor[0] + 4;
+        for (int k = 0; k < n; k++) {
+            i = next(i);
+        }
+        return i;
+    }
+
+    /**
+     * Keys of the object at offset, in encoding order
+     */
+    public List<String> keys(int offset) {
+        expect(offset, '{');
+        int[] cursor = {offset + 1};
+        int count = (int) readVarint(cursor);
+        cursor[0] += 4;
+
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(keys[(int) readVarint(cursor)]);
+            cursor[0] = next(cursor[0]);
+        }
+        return result;
+    }
+
+    public String getString(int offset) {
+        expect(offset, '"');
+        int[] cursor = {offset + 1};
+        int length = (int) readVarint(cursor);
+        return utf8(cursor[0], length);
+    }
+
+    public long getLong(int offset) {
+        char tag = tag(offset);
+        if (tag == 'i') {
+            return ((BigInteger) number(offset)).longValueExact();
+        }
+        expect(offset, 'l');
+        int[] cursor = {offset + 1};
+        long zigzag = readVarint(cursor);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public double getDouble(int offset) {
+        char tag = tag(offset);
+        if (tag == 'l') {
+            return getLong(offset);
+        } else if (tag == 'i' || tag == 'e') {
+            return number(offset).doubleValue();
+        }
+        expect(offset, 'd');
+        return data.getDouble(offset + 1);
+    }
+
+    public boolean getBoolean(int offset) {
+        char tag = tag(offset);
+        if (tag != 't' && tag != 'f') {
+            throw new IllegalArgumentException("Not a boolean at offset " + offset);
+        }
+        return tag == 't';
+    }
+
+    public boolean isNull(int offset) {
+        return tag(offset) == 'n';
+    }
+
+    /**
+     * Decode the whole document to the Map/List form JSONParser.parse returns
+     */
+    public Object toObject() {
+        return toObject(root);
+    }
+
+    public Object toObject(int offset) {
+        switch (tag(offset)) {
+            case '{': {
+                int[] cursor = {offset + 1};
+                int count = (int) readVarint(cursor);
+                cursor[0] += 4;
+                Map<String, Object> map = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String key = keys[(int) readVarint(cursor)];
+                    map.put(key, toObject(cursor[0]));
+                    cursor[0] = next(cursor[0]);
+                }
+                return map;
+            }
+            case '[': {
+                int[] cursor = {offset + 1};
+                int count = (int) readVarint(cursor);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0, element = cursor[0] + 4; i < count; i++, element = next(element)) {
+                    list.add(toObject(element));
+                }
+                return list;
+            }
+            case '"':
+                return getString(offset);
+            case 'l': {
+                long value = getLong(offset);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            }
+            case 'd':
+                return data.getDouble(offset + 1);
+            case 'i':
+            case 'e':
+                return number(offset);
+            case 't':
+                return true;
+            case 'f':
+                return false;
+            case 'n':
+                return null;
+            default:
+                throw new IllegalArgumentException("No value starts at offset " + offset);
+        }
+    }
+
+    /**
+     * Size of the encoding in bytes
+     */
+    public int length() {
+        return data.limit();
+    }
+
+    private Number number(int offset) {
+        int[] cursor = {offset + 1};
+        int length = (int) readVarint(cursor);
+        String text = utf8(cursor[0], length);
+        return tag(offset) == 'i' ? new BigInteger(text) : new BigDecimal(text);
+    }
+
+    private char tag(int offset) {
+        if (offset < 0 || offset >= data.limit()) {
+            throw new IllegalArgumentException("No value starts at offset " + offset);
+        }
+        return (char) data.get(offset);
+    }
+
+    private void expect(int offset, char tag) {
+        if (tag(offset) != tag) {
+            throw new IllegalArgumentException("Expected " + tag + " at offset " + offset + ", found " + tag(offset));
+        }
+    }
+
+    private long readVarint(int[] cursor) {
+        int i = cursor[0];
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get(i++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        cursor[0] = i;
+        return value;
+    }
+
+    private String utf8(int offset, int length) {
+        if (data.hasArray()) {
+            return new String(data.array(), data.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        data.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes one document: values go to a growing buffer while keys are numbered in the
+     * order first seen, and the dictionary is put in front once the body is complete
+     */
+    private static class Encoder {
+        private final Map<String, Integer> keyIds = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private byte[] buf = new byte[1024];
+        private int size;
+
+        byte[] encode(Object value) {
+            writeValue(value);
+            byte[] body = buf;
+            int bodySize = size;
+
+            buf = new byte[64 + keys.size() * 16];
+            size = 0;
+            writeInt(MAGIC);
+            writeVarint(keys.size());
+            for (String key : keys) {
+                byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+                writeVarint(utf8.length);
+                writeBytes(utf8, utf8.length);
+            }
+            writeBytes(body, bodySize);
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte('n');
+            } else if (value instanceof String) {
+                byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+                writeByte('"');
+                writeVarint(utf8.length);
+                writeBytes(utf8, utf8.length);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                int bodyStart = beginContainer('{', map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeVarint(keyId(String.valueOf(entry.getKey())));
+                    writeValue(entry.getValue());
+                }
+                endContainer(bodyStart);
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                int bodyStart = beginContainer('[', list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+                endContainer(bodyStart);
+            } else if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte) {
+                long n = ((Number) value).longValue();
+                writeByte('l');
+                writeVarint((n << 1) ^ (n >> 63));
+            } else if (value instanceof Double || value instanceof Float) {
+                writeByte('d');
+                writeLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof BigInteger) {
+                writeText('i', value.toString());
+            } else if (value instanceof Number) {
+                writeText('e', new BigDecimal(value.toString()).toString());
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? 't' : 'f');
+            } else {
+                throw new IllegalArgumentException("Cannot encode " + value.getClass().getName());
+            }
+        }
+
+        private int keyId(String key) {
+            Integer id = keyIds.get(key);
+            if (id == null) {
+                id = keys.size();
+                keyIds.put(key, id);
+                keys.add(key);
+            }
+            return id;
+        }
+
+        /**
+         * Write the tag and count and reserve the body length; returns where the body starts
+         */
+        private int beginContainer(char tag, int count) {
+            writeByte(tag);
+            writeVarint(count);
+            writeInt(0);
+            return size;
+        }
+
+        private void endContainer(int bodyStart) {
+            int length = size - bodyStart;
+            int at = bodyStart - 4;
+            buf[at] = (byte) length;
+            buf[at + 1] = (byte) (length >>> 8);
+            buf[at + 2] = (byte) (length >>> 16);
+            buf[at + 3] = (byte) (length >>> 24);
+        }
+
+        private void writeText(char tag, String text) {
+            byte[] ascii = text.getBytes(StandardCharsets.US_ASCII);
+            writeByte(tag);
+            writeVarint(ascii.length);
+            writeBytes(ascii, ascii.length);
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                buf[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void writeLong(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        private void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buf, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                if ((long) size + extra > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("Encoding larger than 2 GB");
+                }
+                buf = Arrays.copyOf(buf, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) buf.length * 2, size + extra)));
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * How JSONParser.parse(Class) fills one class: the members it accepts and how to set them
+ * Resolved once per class and cached in a ClassValue; instances are built and fields set
+ * through method handles, so binding does no reflective lookups per document.
+ *
+ * Records are filled through their canonical constructor. Other classes need a no-arg
+ * constructor; each non-static, non-transient field is set through its public setter if
+ * there is one, otherwise directly. Enums bind from their constant names.
+ */
+class JSONBinding {
+    private static final ClassValue<JSONBinding> BINDINGS = new ClassValue<>() {
+        @Override
+        protected JSONBinding computeValue(Class<?> type) {
+            return new JSONBinding(type);
+        }
+    };
+
+    // Canonical member names for parsers that have no key cache of their own
+    static final KeyCache KEYS = new KeyCache();
+
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<?> type;
+    private final Map<String, Property> properties = new HashMap<>();
+    private final Map<String, Object> constants;
+
+    // Records: canonical constructor taking Object[], and the arguments for absent components
+    private final MethodHandle constructor;
+    private final Object[] defaults;
+
+    // Other classes: no-arg constructor returning Object
+    private final MethodHandle creator;
+
+    /**
+     * One bindable member: its declared type, and either its record component index or its setter
+     */
+    static class Property {
+        final Type type;
+        final int index;
+        final MethodHandle setter;
+
+        Property(Type type, int index, MethodHandle setter) {
+            this.type = type;
+            this.index = index;
+            this.setter = setter;
+        }
+    }
+
+    /**
+     * The declared type List<E> for a given element class
+     */
+    static class ListType implements ParameterizedType {
+        private final Class<?> elementType;
+
+        ListType(Class<?> elementType) {
+            this.elementType = elementType;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[]{elementType};
+        }
+
+        @Override
+        public Type getRawType() {
+            return List.class;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+    }
+
+    static JSONBinding of(Class<?> type) {
+        return BINDINGS.get(type);
+    }
+
+    private JSONBinding(Class<?> type) {
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        if (!type.isEnum() && (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isArray() || type.isPrimitive())) {
+            throw new IllegalArgumentException("Cannot bind JSON objects to " + type.getTypeName());
+        }
+
+        try {
+            if (type.isEnum()) {
+                constants = new HashMap<>();
+                for (Object constant : type.getEnumConstants()) {
+                    constants.put(((Enum<?>) constant).name(), constant);
+                }
+                constructor = null;
+                defaults = null;
+                creator = null;
+            } else if (type.isRecord()) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] parameterTypes = new Class<?>[components.length];
+                defaults = new Object[components.length];
+
+                for (int i = 0; i < components.length; i++) {
+                    parameterTypes[i] = components[i].getType();
+                    defaults[i] = defaultValue(parameterTypes[i]);
+                    properties.put(components[i].getName(), new Property(components[i].getGenericType(), i, null));
+                }
+
+                Constructor<?> canonical = type.getDeclaredConstructor(parameterTypes);
+                canonical.setAccessible(true);
+                constructor = lookup.unreflectConstructor(canonical)
+                        .asSpreader(Object[].class, components.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+                constants = null;
+                creator = null;
+            } else {
+                Constructor<?> noArg = type.getDeclaredConstructor();
+                noArg.setAccessible(true);
+                creator = lookup.unreflectConstructor(noArg).asType(MethodType.methodType(Object.class));
+
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                                || properties.containsKey(field.getName())) {
+                            continue;
+                        }
+
+                        MethodHandle setter = setter(lookup, type, field);
+                        if (setter != null) {
+                            properties.put(field.getName(), new Property(field.getGenericType(), -1, setter.asType(SETTER)));
+                        }
+                    }
+                }
+                constants = null;
+                constructor = null;
+                defaults = null;
+            }
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Cannot bind JSON objects to " + type.getTypeName() + ": no no-arg constructor", e);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot bind JSON objects to " + type.getTypeName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Public setX(value) method for the field if one exists, else the field itself; null for final fields
+     */
+    private static MethodHandle setter(MethodHandles.Lookup lookup, Class<?> type, Field field) throws IllegalAccessException {
+        String name = field.getName();
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            Method method = type.getMethod(setterName, field.getType());
+            if (!Modifier.isStatic(method.getModifiers())) {
+                return lookup.unreflect(method);
+            }
+        } catch (NoSuchMethodException e) {
+            // Fall back to the field
+        }
+
+        if (Modifier.isFinal(field.getModifiers())) {
+            return null;
+        }
+        field.setAccessible(true);
+        return lookup.unreflectSetter(field);
+    }
+
+    Property property(String name) {
+        return properties.get(name);
+    }
+
+    boolean isRecord() {
+        return constructor != null;
+    }
+
+    /**
+     * Constructor arguments for a new record, preset to the values used for absent members
+     */
+    Object[] newArguments() {
+        return defaults.clone();
+    }
+
+    Object construct(Object[] arguments) {
+        try {
+            return constructor.invokeExact(arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot construct " + type.getTypeName(), e);
+        }
+    }
+
+    Object newInstance() {
+        try {
+            return creator.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot construct " + type.getTypeName(), e);
+        }
+    }
+
+    void set(Property property, Object target, Object value) {
+        try {
+            property.setter.invokeExact(target, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot set a member of " + type.getTypeName(), e);
+        }
+    }
+
+    /**
+     * Enum constant with the given name, or null
+     */
+    Object constant(String name) {
+        return constants.get(name);
+    }
+
+    /**
+     * Class a declared type erases to; unresolved type variables and wildcards become their bound
+     */
+    static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return rawType(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    /**
+     * Type argument n of a parameterized type, or Object for raw types
+     */
+    static Type typeArgument(Type type, int n) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (n < arguments.length) {
+                return arguments[n];
+            }
+        }
+        return Object.class;
+    }
+
+    static Type componentType(Type type) {
+        if (type instanceof GenericArrayType) {
+            return ((GenericArrayType) type).getGenericComponentType();
+        }
+        return rawType(type).getComponentType();
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        }
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+}
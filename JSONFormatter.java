@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Single-pass streaming pretty-printer / minifier for JSON text
+ * Works on raw UTF-8 bytes with a fixed input and output buffer, so memory use does not depend
+ * on the document size. It is string-aware (structural characters inside strings are copied
+ * untouched) but purely lexical: it re-indents its input without validating it.
+ */
+public class JSONFormatter {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private int indent = 2;
+    private boolean minify = false;
+
+    private final byte[] in = new byte[CHUNK_SIZE];
+    private final byte[] buf = new byte[CHUNK_SIZE];
+    private int count;
+    private OutputStream out;
+
+    // Lexical state carried across input chunks
+    private boolean inString;
+    private boolean escaped;
+    private byte pendingOpen;
+    private int depth;
+
+    public void setIndent(int indent) {
+        this.indent = Math.max(0, indent);
+    }
+
+    /**
+     * Strip all insignificant whitespace instead of indenting
+     */
+    public void setMinify(boolean minify) {
+        this.minify = minify;
+    }
+
+    public void format(InputStream input, OutputStream output) throws IOException {
+        begin(output);
+        int n;
+        while ((n = input.read(in, 0, in.length)) >= 0) {
+            process(in, n);
+        }
+        end();
+    }
+
+    /**
+     * Format the bytes between the buffer's position and limit; the position is left untouched
+     */
+    public void format(ByteBuffer input, OutputStream output) throws IOException {
+        begin(output);
+        for (int index = input.position(); index < input.limit(); index += in.length) {
+            int n = Math.min(in.length, input.limit() - index);
+            input.get(index, in, 0, n);
+            process(in, n);
+        }
+        end();
+    }
+
+    private void begin(OutputStream output) {
+        out = output;
+        count = 0;
+        inString = false;
+        escaped = false;
+        pendingOpen = 0;
+        depth = 0;
+    }
+
+    private void end() throws IOException {
+        flush();
+        out = null;
+    }
+
+    private void process(byte[] chunk, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            byte b = chunk[i];
+
+            if (inString) {
+                write(b);
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                continue;
+            }
+
+            // An opening bracket waits for the next token so that empty containers stay on one line
+            if (pendingOpen != 0) {
+                pendingOpen = 0;
+                if (b == '}' || b == ']') {
+                    write(b);
+                    continue;
+                }
+                depth++;
+                newline();
+            }
+
+            switch (b) {
+                case '"':
+                    inString = true;
+                    write(b);
+                    break;
+                case '{':
+                case '[':
+                    write(b);
+                    pendingOpen = b;
+                    break;
+                case '}':
+                case ']':
+                    depth = Math.max(0, depth - 1);
+                    newline();
+                    write(b);
+                    break;
+                case ',':
+                    write(b);
+                    newline();
+                    break;
+                case ':':
+                    write(b);
+                    if (!minify) {
+                        write((byte) ' ');
+                    }
+                    break;
+                default:
+                    write(b);
+            }
+        }
+    }
+
+    private void newline() throws IOException {
+        if (minify) {
+            return;
+        }
+        write((byte) '\n');
+        for (int i = depth * indent; i > 0; i--) {
+            write((byte) ' ');
+        }
+    }
+
+    private void write(byte b) throws IOException {
+        if (count == buf.length) {
+            flush();
+        }
+        buf[count++] = b;
+    }
+
+    private void flush() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of parsed documents keyed by their content, for payloads that are parsed over and over
+ * Input is hashed with xxHash64 and a hit returns the earlier result without parsing; the input
+ * is kept and compared on every hit, so a hash collision can never return the wrong document.
+ * Results are deeply unmodifiable maps and lists, since every caller of a hit shares them.
+ *
+ * The cache is split into stripes, each with its own lock, LRU order and share of the byte
+ * budget; eviction is by the estimated retained size of the input plus its parsed form, not by
+ * entry count. Misses are parsed outside the lock, so two threads missing the same payload may
+ * both parse it. Malformed input is never cached.
+ */
+public class JSONParseCache {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final Stripe[] stripes;
+    private final long stripeBudget;
+    private final JSONParserPool parsers = new JSONParserPool();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Cache holding at most about maxBytes, striped by the number of processors
+     */
+    public JSONParseCache(long maxBytes) {
+        this(maxBytes, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Cache holding at most about maxBytes across the given number of stripes (rounded up to a
+     * power of two); a document larger than one stripe's share is parsed but never cached
+     */
+    public JSONParseCache(long maxBytes, int stripeCount) {
+        if (maxBytes <= 0 || stripeCount <= 0) {
+            throw new IllegalArgumentException("Max bytes and stripe count must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(stripeCount - 1, 1)) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeBudget = Math.max(1, maxBytes / size);
+    }
+
+    /**
+     * Key cache shared by the parsers that fill the cache, or null to disable it
+     */
+    public void setKeyCache(KeyCache keyCache) {
+        parsers.setKeyCache(keyCache);
+    }
+
+    public Object parse(byte[] json) {
+        return parse(json, 0, json.length);
+    }
+
+    public Object parse(byte[] json, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > json.length) {
+            throw new IndexOutOfBoundsException("Invalid range " + offset + ".." + (offset + length));
+        }
+        long hash = hash(json, offset, length);
+        Stripe stripe = stripe(hash);
+
+        Entry entry = stripe.get(hash);
+        if (entry != null && entry.input instanceof byte[]
+                && Arrays.equals((byte[]) entry.input, 0, ((byte[]) entry.input).length, json, offset, offset + length)) {
+            hits.increment();
+            return entry.value;
+        }
+
+        misses.increment();
+        Object value = freeze(parsers.parse(json, offset, length));
+        byte[] copy = Arrays.copyOfRange(json, offset, offset + length);
+        stripe.put(hash, new Entry(copy, value, 16L + length + retainedBytes(value)));
+        return value;
+    }
+
+    public Object parse(String json) {
+        long hash = hash(json);
+        Stripe stripe = stripe(hash);
+
+        Entry entry = stripe.get(hash);
+        if (entry != null && json.equals(entry.input)) {
+            hits.increment();
+            return entry.value;
+        }
+
+        misses.increment();
+        Object value = freeze(parsers.parse(json));
+        stripe.put(hash, new Entry(json, value, retainedBytes(json) + retainedBytes(value)));
+        return value;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Fraction of lookups answered from the cache
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Number of cached documents
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimated bytes held by the cached inputs and results
+     */
+    public long weight() {
+        long weight = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                weight += stripe.weight;
+            }
+        }
+        return weight;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.entries.clear();
+                stripe.weight = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d documents, %d KB, hit rate %.1f%% (%d hits, %d misses, %d evictions)",
+                size(), weight() / 1024, getHitRate() * 100, getHits(), getMisses(), getEvictions());
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> 32) & (stripes.length - 1)];
+    }
+
+    private static final class Entry {
+        final Object input;
+        final Object value;
+        final long weight;
+
+        Entry(Object input, Object value, long weight) {
+            this.input = input;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * One lock's worth of the cache: entries in access order, least recently used first
+     */
+    private final class Stripe {
+        final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        long weight;
+
+        synchronized Entry get(long hash) {
+            return entries.get(hash);
+        }
+
+        synchronized void put(long hash, Entry entry) {
+            if (entry.weight > stripeBudget) {
+                return;
+            }
+
+            Entry previous = entries.put(hash, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > stripeBudget) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Make a parsed value deeply unmodifiable, in place where possible
+     */
+    @SuppressWarnings("unchecked")
+    private static Object freeze(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                Object member = entry.getValue();
+                if (member instanceof Map || member instanceof List) {
+                    entry.setValue(freeze(member));
+                }
+            }
+            return Collections.unmodifiableMap(map);
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            list.replaceAll(JSONParseCache::freeze);
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+
+    /**
+     * Rough heap footprint of a parsed value, assuming compressed references
+     */
+    private static long retainedBytes(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            // Wrapper, HashMap, its table and one node per entry
+            int table = Math.max(16, Integer.highestOneBit(Math.max(map.size() * 4 / 3, 1) * 2 - 1));
+            long bytes = 16 + 48 + 16 + 4L * table;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += 32 + retainedBytes(entry.getKey()) + retainedBytes(entry.getValue());
+            }
+            return bytes;
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            long bytes = 16 + 24 + 16 + 4L * list.size();
+            for (Object element : list) {
+                bytes += retainedBytes(element);
+            }
+            return bytes;
+        } else if (value instanceof String) {
+            String s = (String) value;
+            // Keys are often canonical instances shared with other documents; count them anyway
+            return 24 + 16 + s.length();
+        } else if (value instanceof Long || value instanceof Double) {
+            return 24;
+        } else if (value instanceof Integer) {
+            return 16;
+        }
+        // Booleans and null are shared constants
+        return 0;
+    }
+
+    /**
+     * xxHash64 (seed 0) of a byte range
+     */
+    static long hash(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        long h;
+
+        if (length >= 32) {
+            long v1 = PRIME1 + PRIME2;
+            long v2 = PRIME2;
+            long v3 = 0;
+            long v4 = -PRIME1;
+            for (int limit = end - 32; i <= limit; i += 32) {
+                v1 = round(v1, (long) LONGS.get(data, i));
+                v2 = round(v2, (long) LONGS.get(data, i + 8));
+                v3 = round(v3, (long) LONGS.get(data, i + 16));
+                v4 = round(v4, (long) LONGS.get(data, i + 24));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += length;
+
+        for (; i + 8 <= end; i += 8) {
+            h ^= round(0, (long) LONGS.get(data, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= end) {
+            h ^= ((int) INTS.get(data, i) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < end; i++) {
+            h ^= (data[i] & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+        return avalanche(h);
+    }
+
+    /**
+     * The same rounds over a String's UTF-16 chars, four to a lane
+     */
+    static long hash(String data) {
+        int length = data.length();
+        int i = 0;
+        long h;
+
+        if (length >= 16) {
+            long v1 = PRIME1 + PRIME2;
+            long v2 = PRIME2;
+            long v3 = 0;
+            long v4 = -PRIME1;
+            for (int limit = length - 16; i <= limit; i += 16) {
+                v1 = round(v1, chars(data, i));
+                v2 = round(v2, chars(data, i + 4));
+                v3 = round(v3, chars(data, i + 8));
+                v4 = round(v4, chars(data, i + 12));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += length * 2L;
+
+        for (; i + 4 <= length; i += 4) {
+            h ^= round(0, chars(data, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        for (; i < length; i++) {
+            h ^= data.charAt(i) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+        return avalanche(h);
+    }
+
+    private static long chars(String s, int i) {
+        return s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(long v1, long v2, long v3, long v4) {
+        long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = (h ^ round(0, v1)) * PRIME1 + PRIME4;
+        h = (h ^ round(0, v2)) * PRIME1 + PRIME4;
+        h = (h ^ round(0, v3)) * PRIME1 + PRIME4;
+        h = (h ^ round(0, v4)) * PRIME1 + PRIME4;
+        return h;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+}
@@ -0,0 +1,41 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event committed by JSONParser for every document parsed while a
+ * recording has it enabled; the fields mirror JSONParseListener.Stats
+ */
+@Name("toyjson.Parse")
+@Label("JSON Parse")
+@Category("ToyJson")
+@Description("A document parsed by JSONParser")
+@StackTrace(false)
+class JSONParseEvent extends Event {
+    @Label("Mode")
+    String mode;
+
+    @Label("Input Size")
+    @DataAmount
+    long size;
+
+    @Label("Max Depth")
+    int depth;
+
+    @Label("Strings")
+    int strings;
+
+    @Label("String Size")
+    @DataAmount
+    long stringSize;
+
+    @Label("Numbers")
+    int numbers;
+
+    @Label("Error")
+    String error;
+}
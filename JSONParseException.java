@@ -0,0 +1,233 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Malformed input, as reported by JSONParser, JSONReader, JSONPushParser and NDJSONParser
+ * The error is kept as data: a code, the offset of the offending input, what was expected there
+ * and what was found. The message and the line/column are only worked out when asked for, and
+ * no stack trace is captured unless the toyjson.stackTraces system property is set, so that
+ * rejecting malformed input costs little more than allocating this object.
+ *
+ * Line and column are counted from the caller's own input, which the exception references
+ * (keeping the whole document reachable) until they are asked for. They are wrong if that buffer
+ * is reused or changed first, for example the buffer of a pooled or reset parser, so read them
+ * before handing the input back. The input is not serialized: a deserialized exception reports
+ * -1 for both unless they were read before it was written.
+ */
+public class JSONParseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Code {
+        UNEXPECTED_CHARACTER,
+        TRAILING_CHARACTERS,
+        UNEXPECTED_END,
+        UNTERMINATED_STRING,
+        UNTERMINATED_ESCAPE,
+        EXPECTED_TOKEN,
+        EXPECTED_KEY,
+        INVALID_ESCAPE,
+        INVALID_UNICODE_ESCAPE,
+        INVALID_NUMBER,
+        EXPECTED_DIGIT,
+        NUMBER_OUT_OF_RANGE,
+        INVALID_LITERAL,
+        TOO_DEEP,
+        TYPE_MISMATCH
+    }
+
+    private static final boolean STACK_TRACES = Boolean.getBoolean("toyjson.stackTraces");
+
+    // Quoted single-character tokens, so that reporting an expected ASCII character allocates nothing
+    private static final String[] TOKENS = new String[128];
+
+    static {
+        for (char c = 0; c < TOKENS.length; c++) {
+            TOKENS[c] = "'" + c + "'";
+        }
+    }
+
+    private final Code code;
+    private final long offset;
+    private final String expected;
+    private final int found;
+    private final String detail;
+
+    // Input the offset points into (a String, byte[] or ByteBuffer), or null for streamed input
+    private final transient Object input;
+    private final int origin;
+    private final long knownLine;
+
+    private String message;
+    private long line;
+    private long column;
+
+    /**
+     * An error at an offset of streamed input, which has no line or column
+     */
+    public JSONParseException(Code code, long offset, String expected, int found) {
+        this(code, offset, expected, found, null, null, 0, 0);
+    }
+
+    JSONParseException(Code code, long offset, String expected, int found, String detail) {
+        this(code, offset, expected, found, detail, null, 0, 0);
+    }
+
+    JSONParseException(Code code, long offset, String expected, int found, String detail,
+                       Object input, int origin, long knownLine) {
+        super(null, null, false, STACK_TRACES);
+        this.code = code;
+        this.offset = offset;
+        this.expected = expected;
+        this.found = found;
+        this.detail = detail;
+        this.input = input;
+        this.origin = origin;
+        this.knownLine = knownLine;
+    }
+
+    /**
+     * Quoted form of a token character, as used for expected
+     */
+    static String token(char c) {
+        return c < TOKENS.length ? TOKENS[c] : "'" + c + "'";
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    /**
+     * Offset of the error from the start of the input (in chars for String input, bytes otherwise)
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * What the grammar allowed at the offset, as shown in the message (tokens are quoted), or null
+     */
+    public String getExpected() {
+        return expected;
+    }
+
+    /**
+     * The character found at the offset, or -1 at the end of the input or when not recorded
+     */
+    public int getFound() {
+        return found;
+    }
+
+    /**
+     * 1-based line of the offset, or -1 when the input is a stream
+     */
+    public long getLine() {
+        locate();
+        return line;
+    }
+
+    /**
+     * 1-based column of the offset within its line, or -1 when the input is a stream
+     */
+    public long getColumn() {
+        locate();
+        return column;
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            String text = describe();
+            message = knownLine > 0 ? "Line " + knownLine + ": " + text : text;
+        }
+        return message;
+    }
+
+    /**
+     * The same error reported at a line of a larger input, for parsers that cut input into lines
+     */
+    JSONParseException onLine(long lineNumber) {
+        // The offset is within the line, so the column follows without keeping the (reused) input
+        return new JSONParseException(code, offset, expected, found, detail, null, 0, lineNumber);
+    }
+
+    /**
+     * The same error with its offset moved by delta, for input that was parsed in pieces
+     */
+    JSONParseException shift(long delta) {
+        return new JSONParseException(code, offset + delta, expected, found, detail, null, 0, knownLine);
+    }
+
+    private String describe() {
+        String at = " at position " + offset;
+        switch (code) {
+            case UNEXPECTED_CHARACTER:
+                return "Unexpected character '" + (char) found + "'" + at;
+            case TRAILING_CHARACTERS:
+                return "Unexpected character" + at;
+            case UNEXPECTED_END:
+                return expected != null ? "Unexpected end of input, expected " + expected : "Unexpected end of input";
+            case UNTERMINATED_STRING:
+                return "Unexpected end of input in string";
+            case UNTERMINATED_ESCAPE:
+                return "Unexpected end of input in Unicode escape";
+            case EXPECTED_TOKEN:
+            case TYPE_MISMATCH:
+                if (detail != null) {
+                    return detail + at;
+                }
+                return "Expected " + expected + (found >= 0 ? ", found '" + (char) found + "'" : "") + at;
+            case EXPECTED_KEY:
+                return "Expected string key, found '" + (char) found + "'" + at;
+            case INVALID_ESCAPE:
+                return "Invalid escape sequence: \\" + (char) found;
+            case INVALID_UNICODE_ESCAPE:
+                return "Invalid Unicode escape sequence";
+            case INVALID_NUMBER:
+                return "Invalid number" + at;
+            case EXPECTED_DIGIT:
+                return "Expected digit " + detail;
+            case NUMBER_OUT_OF_RANGE:
+                return "Invalid number format: " + detail;
+            case INVALID_LITERAL:
+                return "Expected " + expected + at;
+            case TOO_DEEP:
+                return "Nesting deeper than " + detail + " levels" + at;
+            default:
+                return code + at;
+        }
+    }
+
+    /**
+     * Count lines up to the offset; done once, on first request
+     */
+    private void locate() {
+        if (line != 0) {
+            return;
+        }
+        if (input == null || offset < 0) {
+            line = knownLine > 0 ? knownLine : -1;
+            column = knownLine > 0 && offset >= 0 ? offset + 1 : -1;
+            return;
+        }
+
+        long lines = 1;
+        long lineStart = 0;
+        for (int i = 0; i < offset; i++) {
+            if (charAt(origin + i) == '\n') {
+                lines++;
+                lineStart = i + 1;
+            }
+        }
+        line = knownLine > 0 ? knownLine + lines - 1 : lines;
+        column = offset - lineStart + 1;
+    }
+
+    private int charAt(int index) {
+        if (input instanceof String) {
+            return ((String) input).charAt(index);
+        } else if (input instanceof byte[]) {
+            return ((byte[]) input)[index];
+        } else {
+            return ((ByteBuffer) input).get(index);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Receives a summary of every document a JSONParser parses, for metrics
+ * Set with JSONParser.setListener; it is called on the parsing thread after each parse,
+ * including failed ones, so implementations shared between parsers must be thread-safe.
+ * Without a listener (and without a JFR recording) the parser collects nothing.
+ */
+public interface JSONParseListener {
+
+    enum Mode {
+        PARSE, PARALLEL, LAZY, TAPE, VALIDATE, BIND
+    }
+
+    void parsed(Stats stats);
+
+    /**
+     * What one parse call did
+     */
+    final class Stats {
+        private final Mode mode;
+        private final long size;
+        private final long nanos;
+        private final int depth;
+        private final int strings;
+        private final long stringSize;
+        private final int numbers;
+        private final JSONParseException error;
+
+        Stats(Mode mode, long size, long nanos, int depth, int strings, long stringSize, int numbers,
+              JSONParseException error) {
+            this.mode = mode;
+            this.size = size;
+            this.nanos = nanos;
+            this.depth = depth;
+            this.strings = strings;
+            this.stringSize = stringSize;
+            this.numbers = numbers;
+            this.error = error;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Input length: chars for String input, bytes otherwise
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Deepest nesting of objects and arrays reached
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * String values built (keys excluded); counted by PARSE and PARALLEL, and by BIND for Object-typed members
+         */
+        public int getStrings() {
+            return strings;
+        }
+
+        /**
+         * Input taken up by those strings, quotes included
+         */
+        public long getStringSize() {
+            return stringSize;
+        }
+
+        /**
+         * Numbers built; counted like strings
+         */
+        public int getNumbers() {
+            return numbers;
+        }
+
+        /**
+         * The error that ended the parse, or null if it succeeded
+         */
+        public JSONParseException getError() {
+            return error;
+        }
+    }
+}
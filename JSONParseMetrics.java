@@ -0,0 +1,163 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe JSONParseListener keeping counters and power-of-two histograms
+ * One instance can be shared by every parser of a service (or a JSONParserPool); updates
+ * go to LongAdders and atomic buckets, so recording never blocks a parsing thread.
+ */
+public class JSONParseMetrics implements JSONParseListener {
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder strings = new LongAdder();
+    private final LongAdder stringBytes = new LongAdder();
+    private final LongAdder numbers = new LongAdder();
+
+    private final Histogram sizes = new Histogram();
+    private final Histogram latencies = new Histogram();
+    private final Histogram depths = new Histogram();
+
+    @Override
+    public void parsed(Stats stats) {
+        documents.increment();
+        if (stats.getError() != null) {
+            failures.increment();
+        }
+        bytes.add(stats.getSize());
+        nanos.add(stats.getNanos());
+        strings.add(stats.getStrings());
+        stringBytes.add(stats.getStringSize());
+        numbers.add(stats.getNumbers());
+
+        sizes.record(stats.getSize());
+        latencies.record(stats.getNanos());
+        depths.record(stats.getDepth());
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    public long getStrings() {
+        return strings.sum();
+    }
+
+    public long getNumbers() {
+        return numbers.sum();
+    }
+
+    /**
+     * Input parsed per second of parsing time
+     */
+    public double getBytesPerSecond() {
+        long time = nanos.sum();
+        return time == 0 ? 0 : bytes.sum() * 1e9 / time;
+    }
+
+    /**
+     * Fraction of the input that was string values, a proxy for time spent decoding strings
+     */
+    public double getStringShare() {
+        long total = bytes.sum();
+        return total == 0 ? 0 : (double) stringBytes.sum() / total;
+    }
+
+    /**
+     * Document sizes, in chars or bytes
+     */
+    public Histogram getSizes() {
+        return sizes;
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    public Histogram getDepths() {
+        return depths;
+    }
+
+    public void reset() {
+        documents.reset();
+        failures.reset();
+        bytes.reset();
+        nanos.reset();
+        strings.reset();
+        stringBytes.reset();
+        numbers.reset();
+        sizes.reset();
+        latencies.reset();
+        depths.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d documents (%d failed), %.1f MB/s, p50 %d us, p99 %d us, p99 size %d, p99 depth %d, %.0f%% strings",
+                getDocuments(), getFailures(), getBytesPerSecond() / 1e6,
+                latencies.percentile(0.5) / 1000, latencies.percentile(0.99) / 1000,
+                sizes.percentile(0.99), depths.percentile(0.99), getStringShare() * 100);
+    }
+
+    /**
+     * Counts of non-negative values in power-of-two buckets: bucket 0 holds 0,
+     * bucket b holds [2^(b-1), 2^b)
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+        void record(long value) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(value, 0)));
+        }
+
+        public long count(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        public long count() {
+            long total = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                total += buckets.get(b);
+            }
+            return total;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile (0 to 1), or 0 when empty
+         */
+        public long percentile(double quantile) {
+            long total = count();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                seen += buckets.get(b);
+                if (seen >= rank) {
+                    return b == 0 ? 0 : b == 64 ? Long.MAX_VALUE : (1L << b) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (int b = 0; b < buckets.length(); b++) {
+                buckets.set(b, 0);
+            }
+        }
+    }
+}
@@ -1,300 +1,2097 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
 
 /**
  * A basic JSON parser implemented in Java
  * Supports parsing of JSON objects, arrays, strings, numbers, booleans, and null
+ *
+ * Input can be a String or raw UTF-8 bytes. Byte input is scanned directly; all
+ * structural characters are ASCII and never occur inside a multi-byte UTF-8
+ * sequence, so strings and numbers are only decoded when they are materialized.
  */
 public class JSONParser {
     private String jsonStr;
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private int start = 0;
     private int pos = 0;
+    private int limit;
+
+    // Reused across strings that need unescaping; escape-free strings never touch it
+    private final StringBuilder scratch = new StringBuilder();
+
+    private KeyCache keyCache;
+    private boolean primitiveArrays;
+    private ShapedObject.Shape shapes;
+
+    // Instrumentation: an optional listener, and what the current parse has seen for it and for JFR
+    private JSONParseListener listener;
+    private int deepest;
+    private int stringCount;
+    private long stringSize;
+    private int numberCount;
+
+    // Digits of the number last seen by scanNumber: value = mantissa * 10^exponent
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private long numberMantissa;
+    private int numberDigits;
+    private int numberExponent;
+    private boolean numberNegative;
+
+    // Byte input is scanned eight bytes at a time as little-endian longs (SWAR)
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long QUOTES = '"' * ONES;
+    private static final long BACKSLASHES = '\\' * ONES;
+    private static final long SPACES = ' ' * ONES;
+
+    // Top-level arrays smaller than this are not worth splitting across threads
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    // Structural index built by parseLazy: a scalar is one entry holding its start position,
+    // a container is three entries {~start, index past its last descendant, child count}
+    private int[] tape;
+    private int tapeSize;
+
+    // Kept between parseTape calls; build() copies out, so the builder's arrays are reusable
+    private JSONTape.Builder tapeBuilder;
+
+    // Open containers of parse(), with the pending key of each open object; reused across documents
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private Object[] containers = new Object[32];
+    private String[] keys = new String[32];
+    private int depth;
+
+    // Looked up on the first parse with JFR running; the lookup registers the event class
+    private static volatile EventType parseEventType;
+
+    // Current nesting of the recursive walkers, checked against the same limit
+    private int nesting;
+
+    // Cap on the recursive walkers whatever the max depth; about a third of what fits on a 1 MB stack
+    public static final int MAX_RECURSIVE_DEPTH = 1000;
+
+    // Scratch buffers that grew past this are released on reset instead of being kept
+    private static final int MAX_RETAINED_SCRATCH = 1 << 16;
+
+    public JSONParser(String jsonStr) {
+        reset(jsonStr);
+    }
+
+    public JSONParser(byte[] bytes) {
+        reset(bytes);
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON from a slice of a byte array
+     * Positions in error messages are relative to offset
+     */
+    public JSONParser(byte[] bytes, int offset, int length) {
+        reset(bytes, offset, length);
+    }
+
+    /**
+     * Parser over a slice of another parser's input, sharing its settings and position origin
+     */
+    private JSONParser(JSONParser source, int from, int to) {
+        this.jsonStr = source.jsonStr;
+        this.bytes = source.bytes;
+        this.buffer = source.buffer;
+        this.start = source.start;
+        this.pos = from;
+        this.limit = to;
+        this.keyCache = source.keyCache;
+        this.primitiveArrays = source.primitiveArrays;
+        // Slices may run on other threads, and a shape tree is only ever extended by one parser
+        this.shapes = source.shapes != null ? new ShapedObject.Shape() : null;
+        // Slices hold the elements of a top-level array, one level down
+        this.maxDepth = source.maxDepth - 1;
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON between the buffer's position and limit
+     * The buffer's position is left untouched; heap buffers are read through their backing array
+     */
+    public JSONParser(ByteBuffer buffer) {
+        reset(buffer);
+    }
+
+    /**
+     * Point this parser at a new document, keeping its settings and internal buffers
+     * Results of earlier parses stay valid, except lazy views, which read from the old input
+     */
+    public JSONParser reset(String jsonStr) {
+        clearInput();
+        this.jsonStr = jsonStr;
+        this.limit = jsonStr.length();
+        return this;
+    }
+
+    public JSONParser reset(byte[] bytes) {
+        return reset(bytes, 0, bytes.length);
+    }
+
+    public JSONParser reset(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Invalid range " + offset + ".." + (offset + length));
+        }
+        clearInput();
+        this.bytes = bytes;
+        this.start = offset;
+        this.pos = offset;
+        this.limit = offset + length;
+        return this;
+    }
+
+    public JSONParser reset(ByteBuffer buffer) {
+        clearInput();
+        if (buffer.hasArray()) {
+            this.bytes = buffer.array();
+            this.start = buffer.arrayOffset() + buffer.position();
+        } else {
+            // Little-endian view for the word-at-a-time scans; absolute reads leave the caller's buffer alone
+            this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.start = buffer.position();
+        }
+        this.pos = start;
+        this.limit = start + buffer.remaining();
+        return this;
+    }
+
+    private void clearInput() {
+        jsonStr = null;
+        bytes = null;
+        buffer = null;
+        start = 0;
+        pos = 0;
+        if (scratch.capacity() > MAX_RETAINED_SCRATCH) {
+            scratch.setLength(0);
+            scratch.trimToSize();
+        }
+    }
+
+    /**
+     * Share a cache of canonical object keys with this parser, or pass null to disable it
+     */
+    public void setKeyCache(KeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * Parse lazily: validate and index the structure in one pass, but only decode values on access
+     * Objects and arrays come back as LazyObject and LazyArray views backed by this parser's input,
+     * so the parser must not be reused while the views are in use
+     */
+    public Object parseLazy() {
+        if (listener != null || FlightRecorder.isInitialized()) {
+            return observe(JSONParseListener.Mode.LAZY, null);
+        }
+        return lazyDocument();
+    }
+
+    private Object lazyDocument() {
+        if (tape == null) {
+            tape = new int[64];
+        }
+        tapeSize = 0;
+        nesting = 0;
+
+        skipWhitespace();
+        indexValue();
+        skipWhitespace();
+
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
+        }
+
+        return valueAt(tape, 0);
+    }
+
+    /**
+     * Parse into a flat JSONTape instead of maps and lists
+     */
+    public JSONTape parseTape() {
+        if (listener != null || FlightRecorder.isInitialized()) {
+            return (JSONTape) observe(JSONParseListener.Mode.TAPE, null);
+        }
+        return tapeDocument();
+    }
+
+    private JSONTape tapeDocument() {
+        if (tapeBuilder == null) {
+            tapeBuilder = new JSONTape.Builder();
+        }
+        JSONTape.Builder builder = tapeBuilder;
+        builder.clear();
+        nesting = 0;
+
+        skipWhitespace();
+        tapeValue(builder);
+        skipWhitespace();
+
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Maximum nesting of objects and arrays; deeper input fails with a parse error instead of
+     * exhausting memory. Only parse() keeps its open containers on the heap and honours any limit;
+     * parseLazy, parseTape, validate, typed binding and queries recurse, so for them the limit is
+     * capped at MAX_RECURSIVE_DEPTH to keep deep input from overflowing the thread stack
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Max depth must be positive");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Store arrays made up only of integers, or only of decimals, as LongArrayList/DoubleArrayList
+     * backed by a primitive array instead of a list of boxed numbers
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+    }
+
+    /**
+     * Build objects as read-only ShapedObjects, which share their key arrays with every other
+     * object this parser has seen with the same keys, instead of HashMaps
+     * The shapes outlive reset, so a reused parser keeps sharing them across documents.
+     */
+    public void setCompactObjects(boolean compactObjects) {
+        if (!compactObjects) {
+            shapes = null;
+        } else if (shapes == null) {
+            shapes = new ShapedObject.Shape();
+        }
+    }
+
+    /**
+     * Report every parse to the listener, or pass null to stop
+     * Parses are also recorded as JFR events whenever a recording enables toyjson.Parse.
+     */
+    public void setListener(JSONParseListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parse the JSON string and return the corresponding Java object
+     */
+    public Object parse() {
+        if (listener != null || FlightRecorder.isInitialized()) {
+            return observe(JSONParseListener.Mode.PARSE, null);
+        }
+        return parseDocument();
+    }
+
+    private Object parseDocument() {
+        nesting = 0;
+        skipWhitespace();
+        Object result = parseValue();
+        skipWhitespace();
+
+        // Check if there is any unconsumed input
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse, reporting malformed input in the result instead of throwing
+     * Meant for input that is often invalid: the error is neither formatted nor given a stack trace.
+     */
+    public Result tryParse() {
+        try {
+            return new Result(parse(), null);
+        } catch (JSONParseException e) {
+            return new Result(null, e);
+        }
+    }
+
+    /**
+     * Outcome of tryParse: the parsed value, or the error that stopped the parse
+     */
+    public static final class Result {
+        private final Object value;
+        private final JSONParseException error;
+
+        private Result(Object value, JSONParseException error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+
+        /**
+         * The parsed value; throws the parse error if the input was malformed
+         */
+        public Object getValue() {
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+
+        /**
+         * The parse error, or null if the input was valid
+         */
+        public JSONParseException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Check the whole input against the JSON grammar without building any values
+     * Strings, numbers and containers are only scanned, so valid input allocates nothing;
+     * invalid input fails with the error parse() would report
+     */
+    public void validate() {
+        if (listener != null || FlightRecorder.isInitialized()) {
+            observe(JSONParseListener.Mode.VALIDATE, null);
+            return;
+        }
+        validateDocument();
+    }
+
+    private void validateDocument() {
+        nesting = 0;
+        skipWhitespace();
+        skipValue();
+        skipWhitespace();
+
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
+        }
+    }
+
+    /**
+     * Parse straight into an instance of the given type, without building maps and lists first
+     * Records, classes with a no-arg constructor, enums, strings, numbers, booleans, arrays,
+     * collections and maps bind; members the type does not declare are skipped. Object-typed
+     * members get the same value parse() would produce.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T parse(Class<T> type) {
+        return (T) bindDocument(type);
+    }
+
+    /**
+     * Parse a top-level array straight into a list of the given element type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> parseList(Class<T> elementType) {
+        return (List<T>) bindDocument(new JSONBinding.ListType(elementType));
+    }
+
+    private Object bindDocument(Type type) {
+        if (listener != null || FlightRecorder.isInitialized()) {
+            return observe(JSONParseListener.Mode.BIND, type);
+        }
+        return bindTo(type);
+    }
+
+    private Object bindTo(Type type) {
+        nesting = 0;
+        skipWhitespace();
+        Object result = bindValue(type);
+        skipWhitespace();
+
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Read the value at pos as the given declared type
+     */
+    private Object bindValue(Type type) {
+        Class<?> raw = JSONBinding.rawType(type);
+        char c = peek();
+
+        if (c == 'n') {
+            if (raw.isPrimitive()) {
+                throw errorAt(pos, JSONParseException.Code.TYPE_MISMATCH, raw.getName(), c, "Cannot bind null to " + raw.getName());
+            }
+            return parseNull();
+        }
+
+        if (raw == Object.class) {
+            return parseValue();
+        } else if (raw == String.class) {
+            expect(c, '"', raw);
+            return parseString();
+        } else if (raw == int.class || raw == Integer.class || raw == long.class || raw == Long.class
+                || raw == double.class || raw == Double.class || raw == float.class || raw == Float.class
+                || raw == short.class || raw == Short.class || raw == byte.class || raw == Byte.class
+                || raw == Number.class) {
+            if (!isDigit(c) && c != '-') {
+                throw error(JSONParseException.Code.TYPE_MISMATCH, raw.getSimpleName(), c);
+            }
+            int numberStart = pos;
+            return narrow(parseNumber(), raw, numberStart);
+        } else if (raw == boolean.class || raw == Boolean.class) {
+            return parseBoolean();
+        } else if (raw == char.class || raw == Character.class) {
+            expect(c, '"', raw);
+            int valueStart = pos;
+            String value = parseString();
+            if (value.length() != 1) {
+                throw errorAt(valueStart, JSONParseException.Code.TYPE_MISMATCH, raw.getSimpleName(), '"', "Expected a single character");
+            }
+            return value.charAt(0);
+        } else if (raw.isEnum()) {
+            expect(c, '"', raw);
+            int valueStart = pos;
+            Object constant = JSONBinding.of(raw).constant(parseString());
+            if (constant == null) {
+                throw errorAt(valueStart, JSONParseException.Code.TYPE_MISMATCH, raw.getSimpleName(), '"', "Unknown " + raw.getSimpleName() + " constant");
+            }
+            return constant;
+        } else if (raw.isArray()) {
+            expect(c, '[', raw);
+            List<Object> elements = new ArrayList<>();
+            Type componentType = JSONBinding.componentType(type);
+            bindElements(elements, componentType);
+            Object array = Array.newInstance(raw.getComponentType(), elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(array, i, elements.get(i));
+            }
+            return array;
+        } else if (Collection.class.isAssignableFrom(raw)) {
+            expect(c, '[', raw);
+            Collection<Object> elements = newCollection(raw);
+            bindElements(elements, JSONBinding.typeArgument(type, 0));
+            return elements;
+        } else if (Map.class.isAssignableFrom(raw)) {
+            expect(c, '{', raw);
+            return bindMap(newMap(raw), JSONBinding.typeArgument(type, 1));
+        } else {
+            expect(c, '{', raw);
+            return bindObject(JSONBinding.of(raw));
+        }
+    }
+
+    private void bindElements(Collection<Object> elements, Type elementType) {
+        enter();
+        consume('[');
+        skipWhitespace();
+
+        if (peek() == ']') {
+            consume(']');
+        } else {
+            while (true) {
+                skipWhitespace();
+                elements.add(bindValue(elementType));
+                skipWhitespace();
+
+                if (peek() == ']') {
+                    consume(']');
+                    break;
+                }
+                consume(',');
+            }
+        }
+        nesting--;
+    }
+
+    private Map<String, Object> bindMap(Map<String, Object> map, Type valueType) {
+        enter();
+        consume('{');
+        skipWhitespace();
+
+        if (peek() == '}') {
+            consume('}');
+        } else {
+            while (true) {
+                skipWhitespace();
+
+                if (peek() != '"') {
+                    throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+                }
+
+                String key = parseKey();
+                skipWhitespace();
+                consume(':');
+                skipWhitespace();
+                map.put(key, bindValue(valueType));
+                skipWhitespace();
+
+                if (peek() == '}') {
+                    consume('}');
+                    break;
+                }
+                consume(',');
+            }
+        }
+        nesting--;
+        return map;
+    }
+
+    /**
+     * Fill a record or bean member by member; unknown members are validated and skipped
+     */
+    private Object bindObject(JSONBinding binding) {
+        enter();
+        Object[] arguments = binding.isRecord() ? binding.newArguments() : null;
+        Object target = arguments == null ? binding.newInstance() : null;
+
+        consume('{');
+        skipWhitespace();
+
+        if (peek() == '}') {
+            consume('}');
+        } else {
+            // Canonical keys make the property lookup an identity comparison on a cached hash
+            KeyCache keys = keyCache != null ? keyCache : JSONBinding.KEYS;
+
+            while (true) {
+                skipWhitespace();
+
+                if (peek() != '"') {
+                    throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+                }
+
+                String key = parseKey(keys);
+                skipWhitespace();
+                consume(':');
+                skipWhitespace();
+
+                JSONBinding.Property property = binding.property(key);
+                if (property == null) {
+                    skipValue();
+                } else if (arguments != null) {
+                    arguments[property.index] = bindValue(property.type);
+                } else {
+                    binding.set(property, target, bindValue(property.type));
+                }
+
+                skipWhitespace();
+
+                if (peek() == '}') {
+                    consume('}');
+                    break;
+                }
+                consume(',');
+            }
+        }
+
+        nesting--;
+        return arguments != null ? binding.construct(arguments) : target;
+    }
+
+    /**
+     * Convert a parsed number to the declared numeric type, refusing lossy conversions
+     */
+    private Object narrow(Number number, Class<?> type, int numberStart) {
+        if (type == Number.class) {
+            return number;
+        } else if (type == double.class || type == Double.class) {
+            return number.doubleValue();
+        } else if (type == float.class || type == Float.class) {
+            return number.floatValue();
+        }
+
+        if (number instanceof Double) {
+            throw errorAt(numberStart, JSONParseException.Code.TYPE_MISMATCH, type.getSimpleName(), charAt(numberStart), "Expected an integer for " + type.getSimpleName());
+        }
+
+        long value = number.longValue();
+        if (type == long.class || type == Long.class) {
+            return value;
+        } else if ((type == int.class || type == Integer.class) && value == (int) value) {
+            return (int) value;
+        } else if ((type == short.class || type == Short.class) && value == (short) value) {
+            return (short) value;
+        } else if ((type == byte.class || type == Byte.class) && value == (byte) value) {
+            return (byte) value;
+        }
+        throw errorAt(numberStart, JSONParseException.Code.TYPE_MISMATCH, type.getSimpleName(), charAt(numberStart), "Number out of range for " + type.getSimpleName());
+    }
+
+    private void expect(char c, char expected, Class<?> type) {
+        if (c != expected) {
+            throw error(JSONParseException.Code.TYPE_MISMATCH, type.getSimpleName(), c);
+        }
+    }
+
+    private static Collection<Object> newCollection(Class<?> type) {
+        if (type.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        } else if (type.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<>();
+        } else if (type.isAssignableFrom(TreeSet.class)) {
+            return new TreeSet<>();
+        } else if (type.isAssignableFrom(ArrayDeque.class)) {
+            return new ArrayDeque<>();
+        }
+        throw new IllegalArgumentException("Cannot bind JSON arrays to " + type.getName());
+    }
+
+    private static Map<String, Object> newMap(Class<?> type) {
+        if (type.isAssignableFrom(HashMap.class)) {
+            return new HashMap<>();
+        } else if (type.isAssignableFrom(LinkedHashMap.class)) {
+            return new LinkedHashMap<>();
+        } else if (type.isAssignableFrom(TreeMap.class)) {
+            return new TreeMap<>();
+        }
+        throw new IllegalArgumentException("Cannot bind JSON objects to " + type.getName());
+    }
+
+    /**
+     * Parse using the common ForkJoinPool for large top-level arrays
+     */
+    public Object parseParallel() {
+        return parseParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parse a large top-level array by splitting it into chunks at element boundaries and
+     * parsing the chunks concurrently; the elements are returned in their original order
+     * Anything else (or anything small) is parsed sequentially. If a chunk fails, the input
+     * is re-parsed sequentially so the error reported is exactly the one parse() gives.
+     * The listener and the JFR event see one PARALLEL parse covering all of the chunks.
+     */
+    public Object parseParallel(ForkJoinPool pool) {
+        if (listener != null || FlightRecorder.isInitialized()) {
+            return observe(JSONParseListener.Mode.PARALLEL, null, pool);
+        }
+        return parallelDocument(pool);
+    }
+
+    private Object parallelDocument(ForkJoinPool pool) {
+        int origin = pos;
+        skipWhitespace();
+
+        if (pos >= limit || charAt(pos) != '[' || limit - pos < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+            pos = origin;
+            return parseDocument();
+        }
+
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (limit - pos) / (pool.getParallelism() * 4));
+        int[] bounds = splitArray(chunkSize);
+        int chunks = bounds == null ? 0 : bounds[0];
+
+        if (chunks < 2) {
+            pos = origin;
+            return parseDocument();
+        }
+
+        JSONParser[] parsers = new JSONParser[chunks];
+        List<ForkJoinTask<List<Object>>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            parsers[i] = new JSONParser(this, bounds[1 + 2 * i], bounds[2 + 2 * i]);
+            tasks.add(pool.submit(parsers[i]::parseElements));
+        }
+
+        List<Object> result = null;
+        try {
+            List<List<Object>> parts = new ArrayList<>(chunks);
+            int size = 0;
+            for (ForkJoinTask<List<Object>> task : tasks) {
+                List<Object> part = task.join();
+                parts.add(part);
+                size += part.size();
+            }
+
+            result = new ArrayList<>(size);
+            for (List<Object> part : parts) {
+                result.addAll(part);
+            }
+        } catch (RuntimeException e) {
+            for (ForkJoinTask<List<Object>> task : tasks) {
+                task.cancel(false);
+            }
+        }
+
+        if (result == null) {
+            pos = origin;
+            return parseDocument();
+        }
+
+        // Chunks count their own strings and numbers, from one level inside the array
+        deepest = Math.max(deepest, 1);
+        for (JSONParser chunk : parsers) {
+            deepest = Math.max(deepest, chunk.deepest + 1);
+            stringCount += chunk.stringCount;
+            stringSize += chunk.stringSize;
+            numberCount += chunk.numberCount;
+        }
+
+        // The closing bracket was found by the split scan; only trailing input is left to check
+        pos = bounds[2 * chunks] + 1;
+        skipWhitespace();
+
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
+        }
+
+        return result;
+    }
+
+    /**
+     * String-aware structural scan of the array starting at pos, cutting it at top-level
+     * commas roughly every chunkSize characters
+     * Returns {chunkCount, start0, end0, start1, end1, ...}, where the last end is the
+     * closing bracket, or null if the brackets never balance
+     */
+    private int[] splitArray(int chunkSize) {
+        int[] bounds = new int[17];
+        int chunks = 0;
+        int chunkStart = pos + 1;
+        int depth = 0;
+
+        for (int i = pos; i < limit; i++) {
+            char c = charAt(i);
+
+            if (c == '"') {
+                i++;
+                while (i < limit && charAt(i) != '"') {
+                    i += charAt(i) == '\\' ? 2 : 1;
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    bounds = ensureBounds(bounds, chunks);
+                    bounds[1 + 2 * chunks] = chunkStart;
+                    bounds[2 + 2 * chunks] = i;
+                    bounds[0] = chunks + 1;
+                    return bounds;
+                }
+            } else if (c == ',' && depth == 1 && i - chunkStart >= chunkSize) {
+                bounds = ensureBounds(bounds, chunks);
+                bounds[1 + 2 * chunks] = chunkStart;
+                bounds[2 + 2 * chunks] = i;
+                chunks++;
+                chunkStart = i + 1;
+            }
+        }
+
+        return null;
+    }
+
+    private static int[] ensureBounds(int[] bounds, int chunks) {
+        if (2 + 2 * chunks >= bounds.length) {
+            return Arrays.copyOf(bounds, bounds.length * 2 + 1);
+        }
+        return bounds;
+    }
+
+    /**
+     * Parse a comma-separated run of values that fills this parser's whole range
+     */
+    private List<Object> parseElements() {
+        List<Object> list = new ArrayList<>();
+
+        while (true) {
+            skipWhitespace();
+            list.add(parseValue());
+            skipWhitespace();
+
+            if (pos >= limit) {
+                return list;
+            }
+
+            consume(',');
+        }
+    }
+
+    /**
+     * Parse a JSON value without recursion: open containers are kept on an explicit stack,
+     * and every finished value is attached to the container on top of it
+     */
+    private Object parseValue() {
+        skipWhitespace();
+        char c = peek();
+
+        if (c != '{' && c != '[') {
+            return parseScalar(c);
+        }
+
+        int base = depth;
+        try {
+            while (true) {
+                Object value;
+
+                // Under binding or a query the levels above this value are counted in nesting
+                if ((c == '{' || c == '[') && depth + nesting >= maxDepth) {
+                    throw errorAt(pos, JSONParseException.Code.TOO_DEEP, null, charAt(pos), String.valueOf(maxDepth));
+                }
+
+                if (c == '{') {
+                    consume('{');
+                    skipWhitespace();
+
+                    if (peek() == '}') {
+                        consume('}');
+                        value = shapes != null ? ShapedObject.EMPTY : new HashMap<String, Object>();
+                    } else {
+                        push(shapes != null ? new ShapedObject(shapes) : new HashMap<String, Object>());
+                        parseMemberName();
+                        c = peek();
+                        continue;
+                    }
+                } else if (c == '[') {
+                    value = primitiveArrays ? parseNumericArray() : null;
+
+                    if (value == null) {
+                        consume('[');
+                        skipWhitespace();
+
+                        if (peek() == ']') {
+                            consume(']');
+                            value = new ArrayList<Object>();
+                        } else {
+                            push(new ArrayList<Object>());
+                            c = peek();
+                            continue;
+                        }
+                    }
+                } else {
+                    value = parseScalar(c);
+                }
+
+                // Attach the value, then close every container it completes
+                while (true) {
+                    if (depth == base) {
+                        return value;
+                    }
+
+                    if (attach(value)) {
+                        value = containers[--depth];
+                        containers[depth] = null;
+                        keys[depth] = null;
+                        continue;
+                    }
+                    break;
+                }
+
+                c = peek();
+            }
+        } catch (RuntimeException e) {
+            // Drop the partial containers so a reset parser starts from an empty stack
+            while (depth > base) {
+                containers[--depth] = null;
+                keys[depth] = null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Add a value to the container on top of the stack and read past the separator that follows;
+     * returns true if that was the container's closing bracket
+     */
+    @SuppressWarnings("unchecked")
+    private boolean attach(Object value) {
+        Object container = containers[depth - 1];
+        skipWhitespace();
+
+        if (container instanceof ShapedObject) {
+            ShapedObject object = (ShapedObject) container;
+            if (!object.add(keys[depth - 1], value)) {
+                // No shape for this object; keep it in a HashMap from here on
+                Map<String, Object> map = new HashMap<>(object);
+                map.put(keys[depth - 1], value);
+                containers[depth - 1] = map;
+            }
+
+            if (peek() == '}') {
+                consume('}');
+                if (containers[depth - 1] == object) {
+                    object.finish();
+                }
+                return true;
+            }
+            consume(',');
+            skipWhitespace();
+            parseMemberName();
+        } else if (container instanceof Map) {
+            ((Map<String, Object>) container).put(keys[depth - 1], value);
+
+            if (peek() == '}') {
+                consume('}');
+                return true;
+            }
+            consume(',');
+            skipWhitespace();
+            parseMemberName();
+        } else {
+            ((List<Object>) container).add(value);
+
+            if (peek() == ']') {
+                consume(']');
+                return true;
+            }
+            consume(',');
+            skipWhitespace();
+        }
+        return false;
+    }
+
+    /**
+     * Read an object key and its colon into the top stack slot
+     */
+    private void parseMemberName() {
+        if (peek() != '"') {
+            throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+        }
+
+        keys[depth - 1] = parseKey();
+        skipWhitespace();
+        consume(':');
+        skipWhitespace();
+    }
+
+    private void push(Object container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        containers[depth++] = container;
+        // Binding reaches here below its own levels, which are counted in nesting
+        if (depth + nesting > deepest) {
+            deepest = depth + nesting;
+        }
+    }
+
+    private Object parseScalar(char c) {
+        if (c == '"') {
+            int stringStart = pos;
+            String value = parseString();
+            stringCount++;
+            stringSize += pos - stringStart;
+            return value;
+        } else if (c == 't' || c == 'f') {
+            return parseBoolean();
+        } else if (c == 'n') {
+            return parseNull();
+        } else if (isDigit(c) || c == '-') {
+            numberCount++;
+            return parseNumber();
+        } else {
+            throw error(JSONParseException.Code.UNEXPECTED_CHARACTER, null, c);
+        }
+    }
+
+    /**
+     * Count one more level of nesting for the recursive walkers (lazy index, tape, skipping, binding, queries)
+     */
+    private void enter() {
+        int limit = Math.min(maxDepth, MAX_RECURSIVE_DEPTH);
+        if (++nesting > limit) {
+            throw errorAt(pos, JSONParseException.Code.TOO_DEEP, null, charAt(pos), String.valueOf(limit));
+        }
+        if (nesting > deepest) {
+            deepest = nesting;
+        }
+    }
+
+    private static EventType parseEventType() {
+        EventType eventType = parseEventType;
+        if (eventType == null) {
+            parseEventType = eventType = EventType.getEventType(JSONParseEvent.class);
+        }
+        return eventType;
+    }
+
+    /**
+     * Run one parse while measuring it for the listener and the JFR event
+     */
+    private Object observe(JSONParseListener.Mode mode, Type type) {
+        return observe(mode, type, null);
+    }
+
+    /**
+     * observe() for the modes that take a pool (PARALLEL)
+     */
+    private Object observe(JSONParseListener.Mode mode, Type type, ForkJoinPool pool) {
+        // Loading the event class starts Flight Recorder, so it is only touched once JFR is up,
+        // and only instantiated while a recording enables it
+        JSONParseEvent event = null;
+        if (FlightRecorder.isInitialized() && parseEventType().isEnabled()) {
+            event = new JSONParseEvent();
+        }
+        if (event == null && listener == null) {
+            return run(mode, type, pool);
+        }
+
+        long size = limit - pos;
+        deepest = 0;
+        stringCount = 0;
+        stringSize = 0;
+        numberCount = 0;
+
+        JSONParseException error = null;
+        long started = System.nanoTime();
+        if (event != null) {
+            event.begin();
+        }
+        try {
+            return run(mode, type, pool);
+        } catch (JSONParseException e) {
+            error = e;
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - started;
+
+            if (event != null) {
+                event.end();
+            }
+            if (event != null && event.shouldCommit()) {
+                event.mode = mode.name();
+                event.size = size;
+                event.depth = deepest;
+                event.strings = stringCount;
+                event.stringSize = stringSize;
+                event.numbers = numberCount;
+                event.error = error != null ? error.getCode().name() : null;
+                event.commit();
+            }
+            if (listener != null) {
+                listener.parsed(new JSONParseListener.Stats(mode, size, nanos, deepest, stringCount, stringSize,
+                        numberCount, error));
+            }
+        }
+    }
+
+    private Object run(JSONParseListener.Mode mode, Type type, ForkJoinPool pool) {
+        switch (mode) {
+            case PARALLEL:
+                return parallelDocument(pool);
+            case LAZY:
+                return lazyDocument();
+            case TAPE:
+                return tapeDocument();
+            case VALIDATE:
+                validateDocument();
+                return null;
+            case BIND:
+                return bindTo(type);
+            default:
+                return parseDocument();
+        }
+    }
+
+    /**
+     * Try to read the array as all integers or all decimals into a primitive-backed list
+     * Returns null with the position restored when any element does not fit that shape
+     */
+    private List<Object> parseNumericArray() {
+        int arrayStart = pos;
+
+        consume('[');
+        skipWhitespace();
+
+        char c = peek();
+        if (!isDigit(c) && c != '-') {
+            pos = arrayStart;
+            return null;
+        }
+
+        long[] longs = null;
+        double[] doubles = null;
+        int size = 0;
+
+        while (true) {
+            c = peek();
+            if (!isDigit(c) && c != '-') {
+                pos = arrayStart;
+                return null;
+            }
+
+            int numberStart = pos;
+            boolean isFloat = scanNumber();
+
+            if (size == 0) {
+                if (isFloat) {
+                    doubles = new double[16];
+                } else {
+                    longs = new long[16];
+                }
+            }
+
+            if (longs != null) {
+                if (isFloat) {
+                    pos = arrayStart;
+                    return null;
+                }
+                if (size == longs.length) {
+                    longs = Arrays.copyOf(longs, size * 2);
+                }
+                if (numberDigits <= MAX_LONG_DIGITS) {
+                    longs[size++] = numberNegative ? -numberMantissa : numberMantissa;
+                } else {
+                    Number value = toNumber(numberStart, false);
+                    if (!(value instanceof Long)) {
+                        pos = arrayStart;
+                        return null;
+                    }
+                    longs[size++] = value.longValue();
+                }
+            } else {
+                if (!isFloat) {
+                    pos = arrayStart;
+                    return null;
+                }
+                if (size == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, size * 2);
+                }
+                doubles[size++] = isExactDouble() ? exactDouble() : Double.parseDouble(text(numberStart, pos));
+            }
+
+            skipWhitespace();
+
+            if (peek() == ']') {
+                consume(']');
+                break;
+            }
+
+            consume(',');
+            skipWhitespace();
+        }
+
+        numberCount += size;
+        // Drop the doubling slack; the list lives as long as the tree
+        if (longs != null) {
+            return new LongArrayList(size < longs.length ? Arrays.copyOf(longs, size) : longs, size);
+        }
+        return new DoubleArrayList(size < doubles.length ? Arrays.copyOf(doubles, size) : doubles, size);
+    }
+
+    /**
+     * Parse a JSON string
+     */
+    private String parseString() {
+        // Consume the opening quote
+        consume('"');
+
+        // Fast path: no escapes before the closing quote means a single copy of the raw run
+        int runStart = pos;
+        int runEnd = scanStringRun(pos);
+        if (runEnd < limit && charAt(runEnd) == '"') {
+            pos = runEnd + 1;
+            return text(runStart, runEnd);
+        }
+
+        // Slow path: assemble escaped strings in the per-parser scratch buffer
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        appendRun(sb, runStart, runEnd);
+        pos = runEnd;
+
+        while (pos < limit && peek() != '"') {
+            char c = peek();
+
+            if (c == '\\') {
+                // Handle escape sequences
+                consume('\\');
+
+                if (pos >= limit) {
+                    throw error(JSONParseException.Code.UNTERMINATED_STRING, null, -1);
+                }
+
+                c = consume();
+
+                switch (c) {
+                    case 'u':
+                        // Parse 4-digit hex Unicode value
+                        if (pos + 4 > limit) {
+                            throw error(JSONParseException.Code.UNTERMINATED_ESCAPE, null, -1);
+                        }
+
+                        int unicode = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(charAt(pos + i), 16);
+                            if (digit < 0) {
+                                throw errorAt(pos + i, JSONParseException.Code.INVALID_UNICODE_ESCAPE, null, charAt(pos + i), null);
+                            }
+                            unicode = (unicode << 4) | digit;
+                        }
+                        sb.append((char) unicode);
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(unescape(c, pos - 1));
+                }
+            } else {
+                runEnd = scanStringRun(pos);
+                appendRun(sb, pos, runEnd);
+                pos = runEnd;
+            }
+        }
+
+        // Consume the closing quote
+        consume('"');
+
+        return sb.toString();
+    }
+
+    /**
+     * Parse an object key, resolving escape-free keys through the key cache when one is set
+     */
+    private String parseKey() {
+        return parseKey(keyCache);
+    }
+
+    private String parseKey(KeyCache keyCache) {
+        if (keyCache != null) {
+            int keyStart = pos + 1;
+            int keyEnd = scanStringRun(keyStart);
+            if (keyEnd < limit && charAt(keyEnd) == '"') {
+                pos = keyEnd + 1;
+                if (jsonStr != null) {
+                    return keyCache.lookup(jsonStr, keyStart, keyEnd);
+                } else if (bytes != null) {
+                    return keyCache.lookup(bytes, keyStart, keyEnd);
+                } else {
+                    return keyCache.lookup(buffer, keyStart, keyEnd);
+                }
+            }
+        }
+        return parseString();
+    }
+
+    /**
+     * Find the end of a run of unescaped string content (next quote, backslash, or end of input)
+     */
+    private int scanStringRun(int from) {
+        int i = from;
+        if (jsonStr == null) {
+            // Byte input: test eight bytes per step for a quote or a backslash
+            while (i + 8 <= limit) {
+                long word = word(i);
+                long found = zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES);
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+                i += 8;
+            }
+        }
+        while (i < limit) {
+            char c = charAt(i);
+            if (c == '"' || c == '\\') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Append a run of unescaped string content, decoding UTF-8 input as a whole run
+     */
+    private void appendRun(StringBuilder sb, int from, int to) {
+        if (from == to) {
+            return;
+        }
+        if (jsonStr != null) {
+            sb.append(jsonStr, from, to);
+        } else {
+            sb.append(text(from, to));
+        }
+    }
+
+    /**
+     * Parse a JSON number
+     */
+    private Number parseNumber() {
+        int numberStart = pos;
+        boolean isFloat = scanNumber();
+
+        if (!isFloat) {
+            if (numberDigits <= MAX_LONG_DIGITS) {
+                long longValue = numberNegative ? -numberMantissa : numberMantissa;
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            }
+        } else if (isExactDouble()) {
+            return exactDouble();
+        }
+
+        // Too many digits for the inline value; let the JDK do the full conversion
+        return toNumber(numberStart, isFloat);
+    }
+
+    /**
+     * Validate a number literal and move past it, reporting whether it has a fraction or exponent
+     * The digits are accumulated on the way into numberMantissa/numberDigits/numberExponent
+     */
+    private boolean scanNumber() {
+        numberMantissa = 0;
+        numberDigits = 0;
+        numberExponent = 0;
+        numberNegative = false;
+
+        // Handle negative sign
+        if (peek() == '-') {
+            numberNegative = true;
+            consume();
+        }
+
+        // Handle integer part
+        if (peek() == '0') {
+            consume();
+        } else if (isDigit(peek())) {
+            scanDigits(false);
+        } else {
+            throw error(JSONParseException.Code.INVALID_NUMBER, null, pos < limit ? charAt(pos) : -1);
+        }
+
+        boolean isFloat = false;
+
+        // Handle decimal part
+        if (pos < limit && peek() == '.') {
+            isFloat = true;
+            consume();
+
+            if (!isDigit(peek())) {
+                throw errorAt(pos, JSONParseException.Code.EXPECTED_DIGIT, "digit", pos < limit ? charAt(pos) : -1, "after decimal point");
+            }
+
+            scanDigits(true);
+        }
+
+        // Handle exponent part
+        if (pos < limit && (peek() == 'e' || peek() == 'E')) {
+            isFloat = true;
+            consume();
+
+            boolean negativeExponent = false;
+            if (peek() == '+' || peek() == '-') {
+                negativeExponent = consume() == '-';
+            }
+
+            if (!isDigit(peek())) {
+                throw errorAt(pos, JSONParseException.Code.EXPECTED_DIGIT, "digit", pos < limit ? charAt(pos) : -1, "in exponent");
+            }
+
+            int exponent = 0;
+            while (pos < limit && isDigit(charAt(pos))) {
+                // Saturate; anything this large is out of double range either way
+                if (exponent < 100_000) {
+                    exponent = exponent * 10 + (charAt(pos) - '0');
+                }
+                pos++;
+            }
+            numberExponent += negativeExponent ? -exponent : exponent;
+        }
+
+        return isFloat;
+    }
+
+    /**
+     * Accumulate a run of digits into the mantissa; fraction digits also shift the exponent
+     */
+    private void scanDigits(boolean fraction) {
+        long mantissa = numberMantissa;
+        int digits = numberDigits;
+        int exponent = numberExponent;
+
+        while (pos < limit) {
+            // Past the first significant digit, take eight digits of byte input in one step
+            if (digits > 0 && digits <= MAX_LONG_DIGITS - 8 && jsonStr == null && pos + 8 <= limit) {
+                long word = word(pos);
+                if (isEightDigits(word)) {
+                    mantissa = mantissa * 100_000_000 + eightDigits(word);
+                    digits += 8;
+                    if (fraction) {
+                        exponent -= 8;
+                    }
+                    pos += 8;
+                    continue;
+                }
+            }
+
+            char c = charAt(pos);
+            if (!isDigit(c)) {
+                break;
+            }
+            if (digits < MAX_LONG_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    // Leading zeros of a fraction are not significant
+                    digits++;
+                }
+                if (fraction) {
+                    exponent--;
+                }
+            } else {
+                // Past the precision we track; the slow path re-reads the literal
+                digits++;
+            }
+            pos++;
+        }
+
+        numberMantissa = mantissa;
+        numberDigits = digits;
+        numberExponent = exponent;
+    }
+
+    /**
+     * Whether the scanned decimal converts exactly with a single double operation:
+     * the mantissa fits in 53 bits and the power of ten is itself exactly representable
+     */
+    private boolean isExactDouble() {
+        return numberDigits <= 15 && numberExponent >= -22 && numberExponent <= 22;
+    }
+
+    private double exactDouble() {
+        double value = numberMantissa;
+        if (numberExponent >= 0) {
+            value *= POWERS_OF_TEN[numberExponent];
+        } else {
+            value /= POWERS_OF_TEN[-numberExponent];
+        }
+        return numberNegative ? -value : value;
+    }
+
+    /**
+     * ASCII digit check; unlike Character.isDigit, other Unicode digits are not JSON digits
+     */
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Convert a validated number literal, narrowing integers to Integer where they fit
+     * Returns null for integers outside the range of a long
+     */
+    static Number toNumber(String numberStr, boolean isFloat) {
+        try {
+            if (isFloat) {
+                return Double.parseDouble(numberStr);
+            } else {
+                long longValue = Long.parseLong(numberStr);
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolve a single-character escape sequence (unicode escapes are handled by the caller)
+     * Returns 0, which no valid escape produces, for an invalid one
+     */
+    static char unescape(char c) {
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Convert the number literal between numberStart and pos; integers beyond a long are an error
+     */
+    private Number toNumber(int numberStart, boolean isFloat) {
+        String literal = text(numberStart, pos);
+        Number value = toNumber(literal, isFloat);
+        if (value == null) {
+            throw errorAt(numberStart, JSONParseException.Code.NUMBER_OUT_OF_RANGE, null, charAt(numberStart), literal);
+        }
+        return value;
+    }
+
+    /**
+     * Resolve the escape letter c, which sits at index; fails for an invalid one
+     */
+    private char unescape(char c, int index) {
+        char resolved = unescape(c);
+        if (resolved == 0) {
+            throw errorAt(index, JSONParseException.Code.INVALID_ESCAPE, null, c, null);
+        }
+        return resolved;
+    }
+
+    /**
+     * A parse error at the current position
+     */
+    private JSONParseException error(JSONParseException.Code code, String expected, int found) {
+        return errorAt(pos, code, expected, found, null);
+    }
+
+    /**
+     * A parse error at an absolute index; the exception keeps the input to find line and column later
+     */
+    private JSONParseException errorAt(int index, JSONParseException.Code code, String expected, int found, String detail) {
+        Object input = jsonStr != null ? jsonStr : bytes != null ? bytes : buffer;
+        return new JSONParseException(code, index - start, expected, found, detail, input, start, 0);
+    }
+
+    /**
+     * Validate a value and record its position (and extent, for containers) on the tape
+     */
+    private void indexValue() {
+        char c = peek();
+
+        if (c != '{' && c != '[') {
+            record(pos);
+            skipScalar();
+            return;
+        }
+
+        enter();
+        int node = tapeSize;
+        record(~pos);
+        record(0);
+        record(0);
+        int count = 0;
+
+        if (c == '{') {
+            consume('{');
+            skipWhitespace();
+
+            if (peek() == '}') {
+                consume('}');
+            } else {
+                while (true) {
+                    skipWhitespace();
+
+                    if (peek() != '"') {
+                        throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+                    }
+
+                    record(pos);
+                    skipString();
+                    skipWhitespace();
+                    consume(':');
+                    skipWhitespace();
+                    indexValue();
+                    count++;
+                    skipWhitespace();
+
+                    if (peek() == '}') {
+                        consume('}');
+                        break;
+                    }
+                    consume(',');
+                }
+            }
+        } else {
+            consume('[');
+            skipWhitespace();
+
+            if (peek() == ']') {
+                consume(']');
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    indexValue();
+                    count++;
+                    skipWhitespace();
+
+                    if (peek() == ']') {
+                        consume(']');
+                        break;
+                    }
+                    consume(',');
+                }
+            }
+        }
 
-    public JSONParser(String jsonStr) {
-        this.jsonStr = jsonStr;
+        tape[node + 1] = tapeSize;
+        tape[node + 2] = count;
+        nesting--;
     }
 
-    /**
-     * Parse the JSON string and return the corresponding Java object
-     */
-    public Object parse() {
-        skipWhitespace();
-        Object result = parseValue();
-        skipWhitespace();
-
-        // Check if there is any unconsumed input
-        if (pos < jsonStr.length()) {
-            throw new RuntimeException("Unexpected character at position " + pos);
+    private void record(int entry) {
+        if (tapeSize == tape.length) {
+            tape = Arrays.copyOf(tape, tapeSize * 2);
         }
-
-        return result;
+        tape[tapeSize++] = entry;
     }
 
     /**
-     * Parse a JSON value
+     * Append the value at pos to a tape under construction
      */
-    private Object parseValue() {
-        skipWhitespace();
-
+    private void tapeValue(JSONTape.Builder builder) {
         char c = peek();
 
         if (c == '{') {
-            return parseObject();
+            enter();
+            int open = builder.open('{');
+            int count = 0;
+            consume('{');
+            skipWhitespace();
+
+            if (peek() == '}') {
+                consume('}');
+            } else {
+                while (true) {
+                    skipWhitespace();
+
+                    if (peek() != '"') {
+                        throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+                    }
+
+                    tapeString(builder);
+                    skipWhitespace();
+                    consume(':');
+                    skipWhitespace();
+                    tapeValue(builder);
+                    count++;
+                    skipWhitespace();
+
+                    if (peek() == '}') {
+                        consume('}');
+                        break;
+                    }
+                    consume(',');
+                }
+            }
+            builder.close(open, count);
+            nesting--;
         } else if (c == '[') {
-            return parseArray();
+            enter();
+            int open = builder.open('[');
+            int count = 0;
+            consume('[');
+            skipWhitespace();
+
+            if (peek() == ']') {
+                consume(']');
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    tapeValue(builder);
+                    count++;
+                    skipWhitespace();
+
+                    if (peek() == ']') {
+                        consume(']');
+                        break;
+                    }
+                    consume(',');
+                }
+            }
+            builder.close(open, count);
+            nesting--;
         } else if (c == '"') {
-            return parseString();
+            tapeString(builder);
         } else if (c == 't' || c == 'f') {
-            return parseBoolean();
+            builder.addLiteral(parseBoolean() ? 't' : 'f');
         } else if (c == 'n') {
-            return parseNull();
-        } else if (Character.isDigit(c) || c == '-') {
-            return parseNumber();
+            parseNull();
+            builder.addLiteral('n');
+        } else if (isDigit(c) || c == '-') {
+            int numberStart = pos;
+            boolean isFloat = scanNumber();
+
+            if (!isFloat && numberDigits <= MAX_LONG_DIGITS) {
+                builder.addLong(numberNegative ? -numberMantissa : numberMantissa);
+            } else if (isFloat && isExactDouble()) {
+                builder.addDouble(exactDouble());
+            } else {
+                Number value = toNumber(numberStart, isFloat);
+                if (isFloat) {
+                    builder.addDouble(value.doubleValue());
+                } else {
+                    builder.addLong(value.longValue());
+                }
+            }
         } else {
-            throw new RuntimeException("Unexpected character '" + c + "' at position " + pos);
+            throw error(JSONParseException.Code.UNEXPECTED_CHARACTER, null, c);
         }
     }
 
     /**
-     * Parse a JSON object
+     * Copy a string into the tape's arena; escape-free String and ASCII input skip the String object
      */
-    private Map<String, Object> parseObject() {
-        Map<String, Object> map = new HashMap<>();
-
-        // Consume the opening brace
-        consume('{');
-        skipWhitespace();
+    private void tapeString(JSONTape.Builder builder) {
+        int runStart = pos + 1;
+        int runEnd = scanStringRun(runStart);
 
-        // Check for empty object
-        if (peek() == '}') {
-            consume('}');
-            return map;
-        }
-
-        // Parse key-value pairs
-        while (true) {
-            skipWhitespace();
-
-            // Parse the key (must be a string)
-            if (peek() != '"') {
-                throw new RuntimeException("Expected string key, found '" + peek() + "' at position " + pos);
+        if (runEnd < limit && charAt(runEnd) == '"') {
+            if (jsonStr != null) {
+                int offset = builder.beginString(runEnd - runStart);
+                jsonStr.getChars(runStart, runEnd, builder.arena(), offset);
+                pos = runEnd + 1;
+                return;
             }
 
-            String key = parseString();
-            skipWhitespace();
+            boolean ascii = true;
+            for (int i = runStart; i < runEnd && ascii; i++) {
+                ascii = charAt(i) < 0x80;
+            }
+            if (ascii) {
+                int offset = builder.beginString(runEnd - runStart);
+                char[] arena = builder.arena();
+                for (int i = runStart; i < runEnd; i++) {
+                    arena[offset++] = charAt(i);
+                }
+                pos = runEnd + 1;
+                return;
+            }
+        }
 
-            // Consume the colon
-            consume(':');
-            skipWhitespace();
+        String value = parseString();
+        int offset = builder.beginString(value.length());
+        value.getChars(0, value.length(), builder.arena(), offset);
+    }
 
-            // Parse the value
-            Object value = parseValue();
-            map.put(key, value);
+    /**
+     * Validate any value and move past it without materializing anything
+     */
+    private void skipValue() {
+        char c = peek();
 
+        if (c == '{') {
+            enter();
+            consume('{');
             skipWhitespace();
 
-            // Check for end of object or next key-value pair
             if (peek() == '}') {
                 consume('}');
-                return map;
+                nesting--;
+                return;
             }
 
-            // Consume the comma
-            consume(',');
-        }
-    }
-
-    /**
-     * Parse a JSON array
-     */
-    private List<Object> parseArray() {
-        List<Object> list = new ArrayList<>();
-
-        // Consume the opening bracket
-        consume('[');
-        skipWhitespace();
+            while (true) {
+                skipWhitespace();
 
-        // Check for empty array
-        if (peek() == ']') {
-            consume(']');
-            return list;
-        }
+                if (peek() != '"') {
+                    throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+                }
 
-        // Parse values
-        while (true) {
-            Object value = parseValue();
-            list.add(value);
+                skipString();
+                skipWhitespace();
+                consume(':');
+                skipWhitespace();
+                skipValue();
+                skipWhitespace();
 
+                if (peek() == '}') {
+                    consume('}');
+                    nesting--;
+                    return;
+                }
+                consume(',');
+            }
+        } else if (c == '[') {
+            enter();
+            consume('[');
             skipWhitespace();
 
-            // Check for end of array or next value
             if (peek() == ']') {
                 consume(']');
-                return list;
+                nesting--;
+                return;
             }
 
-            // Consume the comma
-            consume(',');
-            skipWhitespace();
+            while (true) {
+                skipWhitespace();
+                skipValue();
+                skipWhitespace();
+
+                if (peek() == ']') {
+                    consume(']');
+                    nesting--;
+                    return;
+                }
+                consume(',');
+            }
+        } else {
+            skipScalar();
         }
     }
 
     /**
-     * Parse a JSON string
+     * Validate a string, number or literal and move past it without materializing it
      */
-    private String parseString() {
-        StringBuilder sb = new StringBuilder();
+    private void skipScalar() {
+        char c = peek();
 
-        // Consume the opening quote
-        consume('"');
+        if (c == '"') {
+            skipString();
+        } else if (c == 't' || c == 'f') {
+            parseBoolean();
+        } else if (c == 'n') {
+            parseNull();
+        } else if (isDigit(c) || c == '-') {
+            int numberStart = pos;
+            if (!scanNumber() && numberDigits > MAX_LONG_DIGITS) {
+                // Integers beyond a long are an error for parse(), so they must be one here too
+                toNumber(numberStart, false);
+            }
+        } else {
+            throw error(JSONParseException.Code.UNEXPECTED_CHARACTER, null, c);
+        }
+    }
 
-        while (pos < jsonStr.length() && peek() != '"') {
-            char c = peek();
+    /**
+     * Validate a string, including its escape sequences, and move past it
+     */
+    private void skipString() {
+        consume('"');
 
-            if (c == '\\') {
-                // Handle escape sequences
-                consume('\\');
+        while (true) {
+            pos = scanStringRun(pos);
 
-                if (pos >= jsonStr.length()) {
-                    throw new RuntimeException("Unexpected end of input in string");
-                }
+            if (pos >= limit) {
+                consume('"');
+            }
 
-                c = consume();
+            if (charAt(pos) == '"') {
+                pos++;
+                return;
+            }
 
-                switch (c) {
-                    case '"':
-                    case '\\':
-                    case '/':
-                        sb.append(c);
-                        break;
-                    case 'b':
-                        sb.append('\b');
-                        break;
-                    case 'f':
-                        sb.append('\f');
-                        break;
-                    case 'n':
-                        sb.append('\n');
-                        break;
-                    case 'r':
-                        sb.append('\r');
-                        break;
-                    case 't':
-                        sb.append('\t');
-                        break;
-                    case 'u':
-                        // Parse 4-digit hex Unicode value
-                        if (pos + 4 > jsonStr.length()) {
-                            throw new RuntimeException("Unexpected end of input in Unicode escape");
-                        }
+            // Backslash: check the escape the same way parseString would
+            pos++;
+            if (pos >= limit) {
+                throw error(JSONParseException.Code.UNTERMINATED_STRING, null, -1);
+            }
 
-                        String hex = jsonStr.substring(pos, pos + 4);
-                        try {
-                            int unicode = Integer.parseInt(hex, 16);
-                            sb.append((char) unicode);
-                            pos += 4;
-                        } catch (NumberFormatException e) {
-                            throw new RuntimeException("Invalid Unicode escape sequence");
-                        }
-                        break;
-                    default:
-                        throw new RuntimeException("Invalid escape sequence: \\" + c);
+            char c = consume();
+            if (c == 'u') {
+                if (pos + 4 > limit) {
+                    throw error(JSONParseException.Code.UNTERMINATED_ESCAPE, null, -1);
+                }
+                for (int i = 0; i < 4; i++) {
+                    if (Character.digit(charAt(pos + i), 16) < 0) {
+                        throw errorAt(pos + i, JSONParseException.Code.INVALID_UNICODE_ESCAPE, null, charAt(pos + i), null);
+                    }
                 }
+                pos += 4;
             } else {
-                sb.append(consume());
+                unescape(c, pos - 1);
             }
         }
-
-        // Consume the closing quote
-        consume('"');
-
-        return sb.toString();
     }
 
     /**
-     * Parse a JSON number
+     * Evaluate a compiled query over the whole input, materializing only the matching values
+     * With firstOnly the scan stops at the first match and the rest of the input is not read
      */
-    private Number parseNumber() {
-        int start = pos;
+    List<Object> select(JSONQuery.Step[] steps, boolean firstOnly) {
+        List<Object> matches = new ArrayList<>();
+        nesting = 0;
 
-        // Handle negative sign
-        if (peek() == '-') {
-            consume();
+        skipWhitespace();
+        if (!select(steps, 0, matches, firstOnly)) {
+            return matches;
         }
+        skipWhitespace();
 
-        // Handle integer part
-        if (peek() == '0') {
-            consume();
-        } else if (Character.isDigit(peek())) {
-            consume();
-            while (pos < jsonStr.length() && Character.isDigit(peek())) {
-                consume();
-            }
-        } else {
-            throw new RuntimeException("Invalid number at position " + pos);
+        if (pos < limit) {
+            throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, -1);
         }
 
-        boolean isFloat = false;
+        return matches;
+    }
 
-        // Handle decimal part
-        if (pos < jsonStr.length() && peek() == '.') {
-            isFloat = true;
-            consume();
+    /**
+     * Match the value at pos against steps[depth..]; returns false to stop the whole scan
+     */
+    private boolean select(JSONQuery.Step[] steps, int depth, List<Object> matches, boolean firstOnly) {
+        if (depth == steps.length) {
+            matches.add(parseValue());
+            return !firstOnly;
+        }
 
-            if (!Character.isDigit(peek())) {
-                throw new RuntimeException("Expected digit after decimal point");
-            }
+        JSONQuery.Step step = steps[depth];
+        char c = peek();
+
+        if (c == '{') {
+            enter();
+            consume('{');
+            skipWhitespace();
 
-            while (pos < jsonStr.length() && Character.isDigit(peek())) {
-                consume();
+            if (peek() == '}') {
+                consume('}');
+                nesting--;
+                return true;
             }
-        }
 
-        // Handle exponent part
-        if (pos < jsonStr.length() && (peek() == 'e' || peek() == 'E')) {
-            isFloat = true;
-            consume();
+            while (true) {
+                skipWhitespace();
 
-            if (peek() == '+' || peek() == '-') {
-                consume();
+                if (peek() != '"') {
+                    throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+                }
+
+                int keyStart = pos;
+                boolean matched = step.isWildcard() || (step.getName() != null && stringEquals(keyStart, step.getName()));
+                pos = keyStart;
+                skipString();
+                skipWhitespace();
+                consume(':');
+                skipWhitespace();
+
+                if (matched) {
+                    if (!select(steps, depth + 1, matches, firstOnly)) {
+                        return false;
+                    }
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+
+                if (peek() == '}') {
+                    consume('}');
+                    nesting--;
+                    return true;
+                }
+                consume(',');
             }
+        } else if (c == '[') {
+            enter();
+            consume('[');
+            skipWhitespace();
 
-            if (!Character.isDigit(peek())) {
-                throw new RuntimeException("Expected digit in exponent");
+            if (peek() == ']') {
+                consume(']');
+                nesting--;
+                return true;
             }
 
-            while (pos < jsonStr.length() && Character.isDigit(peek())) {
-                consume();
+            for (int index = 0; ; index++) {
+                skipWhitespace();
+
+                if (step.isWildcard() || step.getIndex() == index) {
+                    if (!select(steps, depth + 1, matches, firstOnly)) {
+                        return false;
+                    }
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+
+                if (peek() == ']') {
+                    consume(']');
+                    nesting--;
+                    return true;
+                }
+                consume(',');
             }
+        } else {
+            // The path goes deeper than this scalar
+            skipScalar();
+            return true;
         }
+    }
 
-        String numberStr = jsonStr.substring(start, pos);
+    /**
+     * Materialize the tape entry at index: containers become lazy views, scalars are decoded
+     */
+    Object valueAt(int[] tape, int index) {
+        int entry = tape[index];
 
-        try {
-            if (isFloat) {
-                return Double.parseDouble(numberStr);
-            } else {
-                long longValue = Long.parseLong(numberStr);
-                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
-                    return (int) longValue;
+        if (entry >= 0) {
+            pos = entry;
+            return parseValue();
+        }
+
+        if (charAt(~entry) == '{') {
+            return new LazyObject(this, tape, index);
+        }
+        return new LazyArray(this, tape, index);
+    }
+
+    /**
+     * Decode the string starting at an absolute position
+     */
+    String stringAt(int position) {
+        pos = position;
+        return parseString();
+    }
+
+    /**
+     * Compare the string starting at an absolute position with key, without decoding it when possible
+     */
+    boolean stringEquals(int position, String key) {
+        int from = position + 1;
+        int to = scanStringRun(from);
+
+        if (to < limit && charAt(to) == '"') {
+            int length = key.length();
+            if (jsonStr != null) {
+                return to - from == length && jsonStr.regionMatches(from, key, 0, length);
+            }
+
+            // Byte-for-char comparison is only sound when the key is ASCII
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = key.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                if (to - from != length) {
+                    return false;
                 }
-                return longValue;
+                for (int i = 0; i < length; i++) {
+                    if (charAt(from + i) != key.charAt(i)) {
+                        return false;
+                    }
+                }
+                return true;
             }
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Invalid number format: " + numberStr);
         }
+
+        return stringAt(position).equals(key);
     }
 
     /**
      * Parse a JSON boolean
      */
     private Boolean parseBoolean() {
-        if (pos + 4 <= jsonStr.length() && jsonStr.substring(pos, pos + 4).equals("true")) {
+        if (matches("true")) {
             pos += 4;
             return true;
-        } else if (pos + 5 <= jsonStr.length() && jsonStr.substring(pos, pos + 5).equals("false")) {
+        } else if (matches("false")) {
             pos += 5;
             return false;
         } else {
-            throw new RuntimeException("Expected 'true' or 'false' at position " + pos);
+            throw error(JSONParseException.Code.INVALID_LITERAL, "'true' or 'false'", pos < limit ? charAt(pos) : -1);
         }
     }
 
@@ -302,11 +2099,11 @@ public class JSONParser {
      * Parse a JSON null
      */
     private Object parseNull() {
-        if (pos + 4 <= jsonStr.length() && jsonStr.substring(pos, pos + 4).equals("null")) {
+        if (matches("null")) {
             pos += 4;
             return null;
         } else {
-            throw new RuntimeException("Expected 'null' at position " + pos);
+            throw error(JSONParseException.Code.INVALID_LITERAL, "'null'", pos < limit ? charAt(pos) : -1);
         }
     }
 
@@ -314,47 +2111,142 @@ public class JSONParser {
      * Skip whitespace characters
      */
     private void skipWhitespace() {
-        while (pos < jsonStr.length() && Character.isWhitespace(jsonStr.charAt(pos))) {
+        while (pos < limit) {
+            char c = charAt(pos);
+            if (!isWhitespace(c)) {
+                return;
+            }
             pos++;
+
+            if (c == '\n' && jsonStr == null) {
+                // Indentation after a newline: skip the leading spaces eight bytes at a time
+                while (pos + 8 <= limit) {
+                    long diff = word(pos) ^ SPACES;
+                    if (diff != 0) {
+                        pos += Long.numberOfTrailingZeros(diff) >>> 3;
+                        break;
+                    }
+                    pos += 8;
+                }
+            }
         }
     }
 
+    /**
+     * The four whitespace characters JSON allows between tokens
+     */
+    static boolean isWhitespace(char c) {
+        return c <= ' ' && (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+    }
+
+    /**
+     * Eight input bytes starting at an absolute index, first byte lowest; byte input only
+     */
+    private long word(int index) {
+        return bytes != null ? (long) LONGS.get(bytes, index) : buffer.getLong(index);
+    }
+
+    /**
+     * High bit set in each byte where word is zero; exact for the lowest such byte,
+     * which is the only one the scans use
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private static boolean isEightDigits(long word) {
+        return ((word & 0xF0F0F0F0F0F0F0F0L) | (((word + 0x0606060606060606L) & 0xF0F0F0F0F0F0F0F0L) >>> 4))
+                == 0x3333333333333333L;
+    }
+
+    /**
+     * Value of eight ASCII digits, combining pairs, then quads, then halves
+     */
+    private static long eightDigits(long word) {
+        word = ((word & 0x0F0F0F0F0F0F0F0FL) * 2561) >>> 8;
+        word = ((word & 0x00FF00FF00FF00FFL) * 6553601) >>> 16;
+        return ((word & 0x0000FFFF0000FFFFL) * 42949672960001L) >>> 32;
+    }
+
     /**
      * Peek at the current character without consuming it
      */
     private char peek() {
-        if (pos >= jsonStr.length()) {
-            throw new RuntimeException("Unexpected end of input");
+        if (pos >= limit) {
+            throw error(JSONParseException.Code.UNEXPECTED_END, null, -1);
         }
-        return jsonStr.charAt(pos);
+        return charAt(pos);
     }
 
     /**
      * Consume the current character
      */
     private char consume() {
-        if (pos >= jsonStr.length()) {
-            throw new RuntimeException("Unexpected end of input");
+        if (pos >= limit) {
+            throw error(JSONParseException.Code.UNEXPECTED_END, null, -1);
         }
-        return jsonStr.charAt(pos++);
+        return charAt(pos++);
     }
 
     /**
      * Consume a specific character
      */
     private void consume(char expected) {
-        if (pos >= jsonStr.length()) {
-            throw new RuntimeException("Unexpected end of input, expected '" + expected + "'");
+        if (pos >= limit) {
+            throw error(JSONParseException.Code.UNEXPECTED_END, JSONParseException.token(expected), -1);
         }
 
-        char actual = jsonStr.charAt(pos);
+        char actual = charAt(pos);
         if (actual != expected) {
-            throw new RuntimeException("Expected '" + expected + "', found '" + actual + "' at position " + pos);
+            throw error(JSONParseException.Code.EXPECTED_TOKEN, JSONParseException.token(expected), actual);
         }
 
         pos++;
     }
 
+    /**
+     * Check whether the input at the current position starts with the given ASCII literal
+     */
+    private boolean matches(String literal) {
+        if (pos + literal.length() > limit) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (charAt(pos + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the character (or raw byte, for UTF-8 input) at an absolute index
+     */
+    private char charAt(int index) {
+        if (jsonStr != null) {
+            return jsonStr.charAt(index);
+        } else if (bytes != null) {
+            return (char) (bytes[index] & 0xFF);
+        } else {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+    }
+
+    /**
+     * Materialize the input between two absolute indexes, decoding UTF-8 if needed
+     */
+    private String text(int from, int to) {
+        if (jsonStr != null) {
+            return jsonStr.substring(from, to);
+        } else if (bytes != null) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        } else {
+            byte[] slice = new byte[to - from];
+            buffer.get(from, slice);
+            return new String(slice, StandardCharsets.UTF_8);
+        }
+    }
+
     /**
      * Example usage
      */
@@ -0,0 +1,121 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of reusable JSONParser instances that can be shared between threads
+ * A parser is borrowed for one document and handed back, so steady-state parsing only
+ * allocates the result. Idle parsers sit in a shared queue rather than in thread-locals,
+ * which keeps reuse working for short-lived threads that would each build their own copy.
+ */
+public class JSONParserPool {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final BlockingQueue<JSONParser> idle;
+    private volatile KeyCache keyCache = new KeyCache();
+    private volatile boolean primitiveArrays;
+    private volatile boolean compactObjects;
+    private volatile JSONParseListener listener;
+
+    /**
+     * Pool keeping up to two idle parsers per processor
+     */
+    public JSONParserPool() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Pool keeping at most capacity idle parsers; parsers released to a full pool are dropped
+     */
+    public JSONParserPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Key cache shared by every parser of the pool, or null to disable it
+     */
+    public void setKeyCache(KeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+    }
+
+    /**
+     * Build ShapedObjects; each pooled parser keeps its own shapes, so sharing grows with reuse
+     */
+    public void setCompactObjects(boolean compactObjects) {
+        this.compactObjects = compactObjects;
+    }
+
+    /**
+     * Listener given to every parser of the pool, such as one shared JSONParseMetrics
+     */
+    public void setListener(JSONParseListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Borrow a parser configured with the pool's settings; point it at input with reset
+     * and hand it back with release once its results (including lazy views) are no longer read
+     */
+    public JSONParser acquire() {
+        JSONParser parser = idle.poll();
+        if (parser == null) {
+            parser = new JSONParser(EMPTY);
+        }
+        parser.setKeyCache(keyCache);
+        parser.setPrimitiveArrays(primitiveArrays);
+        parser.setCompactObjects(compactObjects);
+        parser.setListener(listener);
+        return parser;
+    }
+
+    public void release(JSONParser parser) {
+        // Drop the reference to the last document so an idle parser does not keep it alive
+        parser.reset(EMPTY);
+        idle.offer(parser);
+    }
+
+    public Object parse(String json) {
+        JSONParser parser = acquire();
+        try {
+            return parser.reset(json).parse();
+        } finally {
+            release(parser);
+        }
+    }
+
+    public Object parse(byte[] json) {
+        return parse(json, 0, json.length);
+    }
+
+    public Object parse(byte[] json, int offset, int length) {
+        JSONParser parser = acquire();
+        try {
+            return parser.reset(json, offset, length).parse();
+        } finally {
+            release(parser);
+        }
+    }
+
+    public Object parse(ByteBuffer json) {
+        JSONParser parser = acquire();
+        try {
+            return parser.reset(json).parse();
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Number of parsers currently waiting in the pool
+     */
+    public int idleCount() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,347 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking push parser: input arrives in chunks of any size through feed, and every
+ * top-level value is handed to the consumer as soon as its last byte has been fed
+ * All state lives in fields, so a chunk may end anywhere, including inside a string, an escape,
+ * a multi-byte character, a number or a literal. Containers are built as their members arrive;
+ * strings and scalars are collected as raw bytes and decoded by a JSONParser once complete.
+ *
+ * Several top-level values may follow each other in one stream (as in NDJSON). A number or
+ * literal at the very end of the stream is only known to be complete after finish().
+ * Errors are JSONParseExceptions whose offsets count bytes from the start of the stream.
+ */
+public class JSONPushParser {
+    // What the next significant byte may be
+    private static final int VALUE = 0;
+    private static final int VALUE_OR_END = 1;
+    private static final int KEY = 2;
+    private static final int KEY_OR_END = 3;
+    private static final int COLON = 4;
+    private static final int AFTER_VALUE = 5;
+
+    // Kind of token being collected across chunks
+    private static final int NONE = 0;
+    private static final int STRING = 1;
+    private static final int SCALAR = 2;
+
+    private final Consumer<Object> consumer;
+    private final JSONParser scalars = new JSONParser(new byte[0]);
+    private KeyCache keyCache = new KeyCache();
+
+    private int maxDepth = JSONParser.DEFAULT_MAX_DEPTH;
+    private Object[] containers = new Object[16];
+    private String[] keys = new String[16];
+    private int depth;
+    private int state = VALUE;
+
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private int tokenKind = NONE;
+    private long tokenStart;
+    private boolean tokenIsKey;
+    private boolean tokenHasEscape;
+    private boolean escaped;
+
+    // Stream position of the next byte fed
+    private long offset;
+    private byte[] transfer;
+
+    public JSONPushParser(Consumer<Object> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Share a cache of canonical object keys, or pass null to disable it
+     */
+    public void setKeyCache(KeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * Maximum nesting of objects and arrays, as for JSONParser.setMaxDepth
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Max depth must be positive");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Consume all bytes between the chunk's position and limit, advancing its position
+     */
+    public void feed(ByteBuffer chunk) {
+        if (chunk.hasArray()) {
+            feed(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            chunk.position(chunk.limit());
+            return;
+        }
+
+        if (transfer == null) {
+            transfer = new byte[8192];
+        }
+        while (chunk.hasRemaining()) {
+            int n = Math.min(chunk.remaining(), transfer.length);
+            chunk.get(transfer, 0, n);
+            feed(transfer, 0, n);
+        }
+    }
+
+    public void feed(byte[] chunk, int from, int length) {
+        int end = from + length;
+        // Stream position of chunk[0]
+        long base = offset - from;
+
+        int i = from;
+        while (i < end) {
+            if (tokenKind == STRING) {
+                i = stringBytes(chunk, i, end);
+                continue;
+            }
+
+            byte b = chunk[i];
+            if (tokenKind == SCALAR) {
+                if (isScalarByte(b)) {
+                    append(b);
+                    i++;
+                    continue;
+                }
+                endScalar();
+            }
+
+            structural(b, base + i);
+            i++;
+        }
+
+        offset = base + end;
+    }
+
+    /**
+     * Signal the end of the stream: completes a trailing number or literal and
+     * fails if a value is still open
+     */
+    public void finish() {
+        if (tokenKind == SCALAR) {
+            endScalar();
+        }
+        if (tokenKind == STRING) {
+            throw new JSONParseException(JSONParseException.Code.UNTERMINATED_STRING, tokenStart, null, -1);
+        }
+        if (depth > 0 || state == COLON) {
+            throw new JSONParseException(JSONParseException.Code.UNEXPECTED_END, offset, null, -1);
+        }
+    }
+
+    /**
+     * Forget any partial input so the parser can start a new stream; required after an error
+     */
+    public void reset() {
+        Arrays.fill(containers, 0, depth, null);
+        Arrays.fill(keys, 0, depth, null);
+        depth = 0;
+        state = VALUE;
+        tokenKind = NONE;
+        tokenLength = 0;
+        escaped = false;
+        offset = 0;
+    }
+
+    /**
+     * Number of bytes fed so far
+     */
+    public long position() {
+        return offset;
+    }
+
+    /**
+     * Copy string bytes up to and including the closing quote, or to the end of the chunk
+     */
+    private int stringBytes(byte[] chunk, int i, int end) {
+        while (i < end) {
+            byte b = chunk[i++];
+            append(b);
+
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+                tokenHasEscape = true;
+            } else if (b == '"') {
+                endString();
+                break;
+            }
+        }
+        return i;
+    }
+
+    private void structural(byte b, long position) {
+        if (JSONParser.isWhitespace((char) b)) {
+            return;
+        }
+
+        switch (b) {
+            case '{':
+                beginValue(b, position);
+                push(new HashMap<String, Object>());
+                state = KEY_OR_END;
+                break;
+            case '[':
+                beginValue(b, position);
+                push(new ArrayList<Object>());
+                state = VALUE_OR_END;
+                break;
+            case '}':
+                if ((state != KEY_OR_END && state != AFTER_VALUE) || depth == 0 || !(containers[depth - 1] instanceof Map)) {
+                    throw unexpected(b, position);
+                }
+                pop();
+                break;
+            case ']':
+                if ((state != VALUE_OR_END && state != AFTER_VALUE) || depth == 0 || !(containers[depth - 1] instanceof List)) {
+                    throw unexpected(b, position);
+                }
+                pop();
+                break;
+            case ',':
+                if (state != AFTER_VALUE || depth == 0) {
+                    throw unexpected(b, position);
+                }
+                state = containers[depth - 1] instanceof Map ? KEY : VALUE;
+                break;
+            case ':':
+                if (state != COLON) {
+                    throw unexpected(b, position);
+                }
+                state = VALUE;
+                break;
+            case '"':
+                tokenIsKey = state == KEY || state == KEY_OR_END;
+                if (!tokenIsKey) {
+                    beginValue(b, position);
+                }
+                beginToken(STRING, b, position);
+                break;
+            default:
+                if (b == '-' || JSONParser.isDigit((char) b) || (b >= 'a' && b <= 'z')) {
+                    beginValue(b, position);
+                    beginToken(SCALAR, b, position);
+                } else {
+                    throw unexpected(b, position);
+                }
+        }
+    }
+
+    private void beginValue(byte b, long position) {
+        if (state != VALUE && state != VALUE_OR_END) {
+            throw unexpected(b, position);
+        }
+        if ((b == '{' || b == '[') && depth == maxDepth) {
+            throw new JSONParseException(JSONParseException.Code.TOO_DEEP, position, null, b, Integer.toString(maxDepth));
+        }
+    }
+
+    private void beginToken(int kind, byte first, long position) {
+        tokenKind = kind;
+        tokenStart = position;
+        tokenLength = 0;
+        tokenHasEscape = false;
+        escaped = false;
+        append(first);
+    }
+
+    private void endString() {
+        tokenKind = NONE;
+
+        if (tokenIsKey) {
+            keys[depth - 1] = tokenHasEscape || keyCache == null
+                    ? (String) decodeToken()
+                    : keyCache.lookup(token, 1, tokenLength - 1);
+            state = COLON;
+        } else {
+            complete(decodeToken());
+        }
+    }
+
+    private void endScalar() {
+        tokenKind = NONE;
+        complete(decodeToken());
+    }
+
+    private Object decodeToken() {
+        try {
+            return scalars.reset(token, 0, tokenLength).parse();
+        } catch (JSONParseException e) {
+            // Offsets are relative to the token; report them from the start of the stream
+            throw e.shift(tokenStart);
+        }
+    }
+
+    /**
+     * Attach a finished value to the open container, or emit it if it is a top-level value
+     */
+    @SuppressWarnings("unchecked")
+    private void complete(Object value) {
+        if (depth == 0) {
+            state = VALUE;
+            consumer.accept(value);
+            return;
+        }
+
+        Object container = containers[depth - 1];
+        if (container instanceof Map) {
+            ((Map<String, Object>) container).put(keys[depth - 1], value);
+        } else {
+            ((List<Object>) container).add(value);
+        }
+        state = AFTER_VALUE;
+    }
+
+    private void push(Object container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        containers[depth++] = container;
+    }
+
+    private void pop() {
+        Object container = containers[--depth];
+        containers[depth] = null;
+        keys[depth] = null;
+        complete(container);
+    }
+
+    private void append(byte b) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, tokenLength * 2);
+        }
+        token[tokenLength++] = b;
+    }
+
+    private static boolean isScalarByte(byte b) {
+        return JSONParser.isDigit((char) b) || (b >= 'a' && b <= 'z')
+                || b == '-' || b == '+' || b == '.' || b == 'E';
+    }
+
+    private JSONParseException unexpected(byte b, long position) {
+        int c = b & 0xFF;
+        switch (state) {
+            case KEY:
+            case KEY_OR_END:
+                return new JSONParseException(JSONParseException.Code.EXPECTED_KEY, position, null, c);
+            case COLON:
+                return new JSONParseException(JSONParseException.Code.EXPECTED_TOKEN, position, JSONParseException.token(':'), c);
+            case AFTER_VALUE:
+                return new JSONParseException(JSONParseException.Code.EXPECTED_TOKEN, position, JSONParseException.token(','), c);
+            default:
+                return new JSONParseException(JSONParseException.Code.UNEXPECTED_CHARACTER, position, null, c);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled JSON Pointer (RFC 6901) or restricted JSONPath expression, evaluated while scanning
+ * Only values on the query path are materialized; every other subtree is validated and skipped
+ * without building maps, lists or strings.
+ *
+ * Supported JSONPath subset: $ followed by .name, .*, ['name'], ["name"], [n] and [*].
+ */
+public class JSONQuery {
+    private final String expression;
+    private final Step[] steps;
+
+    private JSONQuery(String expression, Step[] steps) {
+        this.expression = expression;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile a JSON Pointer ("" or "/a/0/b") or a JSONPath expression starting with '$'
+     */
+    public static JSONQuery compile(String expression) {
+        if (expression.startsWith("$")) {
+            return new JSONQuery(expression, compilePath(expression));
+        }
+        if (expression.isEmpty() || expression.startsWith("/")) {
+            return new JSONQuery(expression, compilePointer(expression));
+        }
+        throw new IllegalArgumentException("Not a JSON Pointer or JSONPath expression: " + expression);
+    }
+
+    /**
+     * All matching values, in document order; the whole input is validated
+     */
+    public List<Object> select(JSONParser parser) {
+        return parser.select(steps, false);
+    }
+
+    /**
+     * The first matching value, or null; scanning stops as soon as it is found
+     */
+    public Object selectFirst(JSONParser parser) {
+        List<Object> matches = parser.select(steps, true);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static Step[] compilePointer(String pointer) {
+        List<Step> steps = new ArrayList<>();
+
+        int from = 1;
+        while (from <= pointer.length() && !pointer.isEmpty()) {
+            int to = pointer.indexOf('/', from);
+            if (to < 0) {
+                to = pointer.length();
+            }
+
+            String token = pointer.substring(from, to).replace("~1", "/").replace("~0", "~");
+            steps.add(new Step(token, arrayIndex(token), false));
+            from = to + 1;
+        }
+
+        return steps.toArray(new Step[0]);
+    }
+
+    private static Step[] compilePath(String path) {
+        List<Step> steps = new ArrayList<>();
+        int i = 1;
+
+        while (i < path.length()) {
+            char c = path.charAt(i);
+
+            if (c == '.') {
+                int start = ++i;
+                if (i < path.length() && path.charAt(i) == '.') {
+                    throw new IllegalArgumentException("Recursive descent is not supported: " + path);
+                }
+                while (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                    i++;
+                }
+                String name = path.substring(start, i);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty name at position " + start + " in " + path);
+                }
+                steps.add(name.equals("*") ? Step.WILDCARD : new Step(name, -1, false));
+            } else if (c == '[') {
+                int close = path.indexOf(']', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed '[' at position " + i + " in " + path);
+                }
+                String selector = path.substring(i + 1, close).trim();
+                steps.add(bracketStep(selector, path));
+                i = close + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + c + "' at position " + i + " in " + path);
+            }
+        }
+
+        return steps.toArray(new Step[0]);
+    }
+
+    private static Step bracketStep(String selector, String path) {
+        if (selector.equals("*")) {
+            return Step.WILDCARD;
+        }
+
+        if (selector.length() >= 2
+                && (selector.charAt(0) == '\'' || selector.charAt(0) == '"')
+                && selector.charAt(selector.length() - 1) == selector.charAt(0)) {
+            return new Step(selector.substring(1, selector.length() - 1), -1, false);
+        }
+
+        int index = arrayIndex(selector);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unsupported selector [" + selector + "] in " + path);
+        }
+        return new Step(null, index, false);
+    }
+
+    /**
+     * Non-negative decimal array index without leading zeros, or -1
+     */
+    private static int arrayIndex(String token) {
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) {
+            return -1;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!JSONParser.isDigit(token.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(token);
+    }
+
+    /**
+     * One path step: an object member name, an array index, or a wildcard over either
+     */
+    static class Step {
+        static final Step WILDCARD = new Step(null, -1, true);
+
+        private final String name;
+        private final int index;
+        private final boolean wildcard;
+
+        Step(String name, int index, boolean wildcard) {
+            this.name = name;
+            this.index = index;
+            this.wildcard = wildcard;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        boolean isWildcard() {
+            return wildcard;
+        }
+    }
+}
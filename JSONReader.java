@@ -0,0 +1,413 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A streaming pull parser over the same grammar as JSONParser
+ * Reads through a fixed-size buffer, so memory stays bounded by the nesting depth
+ * and the longest single string or number rather than by the document size
+ */
+public class JSONReader implements Closeable {
+
+    public enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL
+    }
+
+    // Per-level state flags kept on the container stack
+    private static final byte OBJECT = 1;
+    private static final byte NEED_COMMA = 2;
+    private static final byte AFTER_NAME = 4;
+
+    private final Reader reader;
+    private final char[] buf;
+    private int bufPos = 0;
+    private int bufLen = 0;
+    private long offset = 0;
+
+    private byte[] stack = new byte[16];
+    private String[] names = new String[16];
+    private int depth = 0;
+    private boolean rootDone = false;
+
+    private Token current;
+    private final StringBuilder text = new StringBuilder();
+    private boolean isFloat;
+    private long numberStart;
+
+    public JSONReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    public JSONReader(Reader reader) {
+        this(reader, 8192);
+    }
+
+    public JSONReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buf = new char[bufferSize];
+    }
+
+    /**
+     * Advance to the next token, or return null once the document is complete
+     */
+    public Token nextToken() throws IOException {
+        return current = advance(true);
+    }
+
+    /**
+     * Skip past the matching end token if positioned on START_OBJECT or START_ARRAY
+     * Nested names and strings are validated but never materialized
+     */
+    public void skipChildren() throws IOException {
+        if (current != Token.START_OBJECT && current != Token.START_ARRAY) {
+            return;
+        }
+
+        int target = depth - 1;
+        while (depth > target) {
+            current = advance(false);
+        }
+    }
+
+    /**
+     * Read the next token; strings are only kept in the text buffer when keep is set
+     */
+    private Token advance(boolean keep) throws IOException {
+        skipWhitespace();
+
+        if (depth == 0) {
+            if (rootDone) {
+                if (peekChar() >= 0) {
+                    throw error(JSONParseException.Code.TRAILING_CHARACTERS, null, peekChar());
+                }
+                return null;
+            }
+            rootDone = true;
+            return readValue(keep);
+        }
+
+        byte state = stack[depth - 1];
+
+        if ((state & OBJECT) != 0) {
+            if ((state & AFTER_NAME) != 0) {
+                consume(':');
+                skipWhitespace();
+                stack[depth - 1] = (byte) (state & ~AFTER_NAME);
+                return readValue(keep);
+            }
+
+            if (peek() == '}') {
+                consume();
+                depth--;
+                return Token.END_OBJECT;
+            }
+
+            if ((state & NEED_COMMA) != 0) {
+                consume(',');
+                skipWhitespace();
+            }
+
+            if (peek() != '"') {
+                throw error(JSONParseException.Code.EXPECTED_KEY, null, peek());
+            }
+
+            readString(keep);
+            names[depth - 1] = keep ? text.toString() : null;
+            stack[depth - 1] = (byte) (state | NEED_COMMA | AFTER_NAME);
+            return Token.FIELD_NAME;
+        }
+
+        if (peek() == ']') {
+            consume();
+            depth--;
+            return Token.END_ARRAY;
+        }
+
+        if ((state & NEED_COMMA) != 0) {
+            consume(',');
+            skipWhitespace();
+        }
+
+        stack[depth - 1] = (byte) (state | NEED_COMMA);
+        return readValue(keep);
+    }
+
+    public Token currentToken() {
+        return current;
+    }
+
+    /**
+     * Name of the field the current token belongs to, or null outside of an object
+     */
+    public String currentName() {
+        int level = depth;
+        if (current == Token.START_OBJECT || current == Token.START_ARRAY) {
+            level--;
+        }
+        if (level <= 0 || (stack[level - 1] & OBJECT) == 0) {
+            return null;
+        }
+        return names[level - 1];
+    }
+
+    public String getText() {
+        if (current == null) {
+            return null;
+        }
+        switch (current) {
+            case FIELD_NAME:
+                return names[depth - 1];
+            case STRING:
+            case NUMBER:
+                return text.toString();
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            case NULL:
+                return "null";
+            case START_OBJECT:
+                return "{";
+            case END_OBJECT:
+                return "}";
+            case START_ARRAY:
+                return "[";
+            default:
+                return "]";
+        }
+    }
+
+    public Number getNumber() {
+        if (current != Token.NUMBER) {
+            throw new IllegalStateException("Current token is not a number: " + current);
+        }
+        String literal = text.toString();
+        Number value = JSONParser.toNumber(literal, isFloat);
+        if (value == null) {
+            throw new JSONParseException(JSONParseException.Code.NUMBER_OUT_OF_RANGE, numberStart, null, literal.charAt(0), literal);
+        }
+        return value;
+    }
+
+    public long getLong() {
+        return getNumber().longValue();
+    }
+
+    public double getDouble() {
+        return getNumber().doubleValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Read a value token, pushing a new level for objects and arrays
+     */
+    private Token readValue(boolean keep) throws IOException {
+        char c = peek();
+
+        if (c == '{') {
+            consume();
+            push(OBJECT);
+            return Token.START_OBJECT;
+        } else if (c == '[') {
+            consume();
+            push((byte) 0);
+            return Token.START_ARRAY;
+        } else if (c == '"') {
+            readString(keep);
+            return Token.STRING;
+        } else if (c == 't') {
+            readLiteral("true", "'true' or 'false'");
+            return Token.TRUE;
+        } else if (c == 'f') {
+            readLiteral("false", "'true' or 'false'");
+            return Token.FALSE;
+        } else if (c == 'n') {
+            readLiteral("null", "'null'");
+            return Token.NULL;
+        } else if (JSONParser.isDigit(c) || c == '-') {
+            readNumber();
+            return Token.NUMBER;
+        } else {
+            throw error(JSONParseException.Code.UNEXPECTED_CHARACTER, null, c);
+        }
+    }
+
+    private void push(byte state) {
+        if (depth == stack.length) {
+            int newLength = stack.length * 2;
+            stack = Arrays.copyOf(stack, newLength);
+            names = Arrays.copyOf(names, newLength);
+        }
+        names[depth] = null;
+        stack[depth++] = state;
+    }
+
+    /**
+     * Read a string into the text buffer, or just validate it when keep is false
+     */
+    private void readString(boolean keep) throws IOException {
+        text.setLength(0);
+        consume('"');
+
+        while (peekChar() >= 0 && peek() != '"') {
+            char c = consume();
+
+            if (c == '\\') {
+                if (peekChar() < 0) {
+                    throw error(JSONParseException.Code.UNTERMINATED_STRING, null, -1);
+                }
+
+                c = consume();
+
+                if (c == 'u') {
+                    int unicode = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if (peekChar() < 0) {
+                            throw error(JSONParseException.Code.UNTERMINATED_ESCAPE, null, -1);
+                        }
+                        int digit = Character.digit(peek(), 16);
+                        if (digit < 0) {
+                            throw error(JSONParseException.Code.INVALID_UNICODE_ESCAPE, null, peek());
+                        }
+                        consume();
+                        unicode = (unicode << 4) | digit;
+                    }
+                    c = (char) unicode;
+                } else {
+                    char escape = c;
+                    c = JSONParser.unescape(escape);
+                    if (c == 0) {
+                        throw new JSONParseException(JSONParseException.Code.INVALID_ESCAPE, position() - 1, null, escape);
+                    }
+                }
+            }
+
+            if (keep) {
+                text.append(c);
+            }
+        }
+
+        consume('"');
+    }
+
+    private void readNumber() throws IOException {
+        text.setLength(0);
+        isFloat = false;
+        numberStart = position();
+
+        if (peek() == '-') {
+            text.append(consume());
+        }
+
+        if (peek() == '0') {
+            text.append(consume());
+        } else if (JSONParser.isDigit(peek())) {
+            appendDigits();
+        } else {
+            throw error(JSONParseException.Code.INVALID_NUMBER, null, peekChar());
+        }
+
+        if (peekChar() == '.') {
+            isFloat = true;
+            text.append(consume());
+
+            if (!JSONParser.isDigit(peek())) {
+                throw new JSONParseException(JSONParseException.Code.EXPECTED_DIGIT, position(), "digit", peek(), "after decimal point");
+            }
+            appendDigits();
+        }
+
+        if (peekChar() == 'e' || peekChar() == 'E') {
+            isFloat = true;
+            text.append(consume());
+
+            if (peek() == '+' || peek() == '-') {
+                text.append(consume());
+            }
+
+            if (!JSONParser.isDigit(peek())) {
+                throw new JSONParseException(JSONParseException.Code.EXPECTED_DIGIT, position(), "digit", peek(), "in exponent");
+            }
+            appendDigits();
+        }
+    }
+
+    private void appendDigits() throws IOException {
+        while (peekChar() >= 0 && JSONParser.isDigit((char) peekChar())) {
+            text.append(consume());
+        }
+    }
+
+    private void readLiteral(String literal, String expected) throws IOException {
+        long literalStart = position();
+        for (int i = 0; i < literal.length(); i++) {
+            if (peekChar() != literal.charAt(i)) {
+                throw new JSONParseException(JSONParseException.Code.INVALID_LITERAL, literalStart, expected, peekChar());
+            }
+            consume();
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (peekChar() >= 0 && JSONParser.isWhitespace(buf[bufPos])) {
+            bufPos++;
+        }
+    }
+
+    /**
+     * Peek at the current character, refilling the buffer if needed; -1 at end of input
+     */
+    private int peekChar() throws IOException {
+        if (bufPos == bufLen) {
+            offset += bufLen;
+            bufPos = 0;
+            bufLen = 0;
+            int n;
+            while ((n = reader.read(buf, 0, buf.length)) == 0) {
+                // Readers may legally return 0 for a non-empty request; try again
+            }
+            if (n < 0) {
+                return -1;
+            }
+            bufLen = n;
+        }
+        return buf[bufPos];
+    }
+
+    private char peek() throws IOException {
+        int c = peekChar();
+        if (c < 0) {
+            throw error(JSONParseException.Code.UNEXPECTED_END, null, -1);
+        }
+        return (char) c;
+    }
+
+    private char consume() throws IOException {
+        char c = peek();
+        bufPos++;
+        return c;
+    }
+
+    private void consume(char expected) throws IOException {
+        int actual = peekChar();
+        if (actual < 0) {
+            throw error(JSONParseException.Code.UNEXPECTED_END, JSONParseException.token(expected), -1);
+        }
+        if (actual != expected) {
+            throw error(JSONParseException.Code.EXPECTED_TOKEN, JSONParseException.token(expected), actual);
+        }
+        bufPos++;
+    }
+
+    private JSONParseException error(JSONParseException.Code code, String expected, int found) {
+        return new JSONParseException(code, position(), expected, found);
+    }
+
+    private long position() {
+        return offset + bufPos;
+    }
+}
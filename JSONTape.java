@@ -0,0 +1,349 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed document stored as a flat tape, in the spirit of simdjson's tape format
+ * Every value is one tagged long (two for numbers) and all string characters live in one
+ * shared char arena, so a cached document is a handful of arrays instead of a graph of maps,
+ * boxes and strings. Values are addressed by tape index; use toObject for the Map/List form.
+ *
+ * Entry layout: the top 8 bits hold the tag, the low 56 bits the payload
+ *   '{' / '['  low 32 bits: index just past the closing entry, bits 32-55: child count (saturated)
+ *   '}' / ']'  index of the opening entry
+ *   '"'        offset of the string in the arena (length stored in the two chars before it)
+ *   'l' / 'd'  followed by one raw entry holding the long, or the double's bits
+ *   't' 'f' 'n'
+ */
+public class JSONTape {
+
+    public enum Type {
+        OBJECT, ARRAY, STRING, LONG, DOUBLE, TRUE, FALSE, NULL
+    }
+
+    private static final long PAYLOAD_MASK = (1L << 56) - 1;
+    private static final int MAX_COUNT = (1 << 24) - 1;
+
+    private final long[] tape;
+    private final char[] arena;
+
+    private JSONTape(long[] tape, char[] arena) {
+        this.tape = tape;
+        this.arena = arena;
+    }
+
+    /**
+     * Index of the root value
+     */
+    public int root() {
+        return 0;
+    }
+
+    public Type type(int index) {
+        switch (tag(index)) {
+            case '{':
+                return Type.OBJECT;
+            case '[':
+                return Type.ARRAY;
+            case '"':
+                return Type.STRING;
+            case 'l':
+                return Type.LONG;
+            case 'd':
+                return Type.DOUBLE;
+            case 't':
+                return Type.TRUE;
+            case 'f':
+                return Type.FALSE;
+            case 'n':
+                return Type.NULL;
+            default:
+                throw new IllegalArgumentException("No value starts at tape index " + index);
+        }
+    }
+
+    /**
+     * Index of the value following the one at index, skipping any nested entries
+     */
+    public int next(int index) {
+        char tag = tag(index);
+        if (tag == '{' || tag == '[') {
+            return (int) tape[index];
+        }
+        return tag == 'l' || tag == 'd' ? index + 2 : index + 1;
+    }
+
+    /**
+     * Number of members or elements of the container at index
+     */
+    public int size(int index) {
+        checkContainer(index);
+        int count = (int) ((tape[index] >>> 32) & MAX_COUNT);
+        if (count < MAX_COUNT) {
+            return count;
+        }
+
+        // Saturated: count the children by walking them
+        count = 0;
+        int end = (int) tape[index] - 1;
+        boolean object = tag(index) == '{';
+        for (int i = index + 1; i < end; i = next(object ? i + 1 : i)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Index of the value of the given member of the object at index, or -1 (last occurrence wins)
+     */
+    public int field(int index, String key) {
+        if (tag(index) != '{') {
+            throw new IllegalArgumentException("Not an object at tape index " + index);
+        }
+
+        int found = -1;
+        int end = (int) tape[index] - 1;
+        for (int i = index + 1; i < end; i = next(i + 1)) {
+            if (stringEquals(i, key)) {
+                found = i + 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Index of element n of the array at index, or -1 if out of range
+     */
+    public int element(int index, int n) {
+        if (tag(index) != '[') {
+            throw new IllegalArgumentException("Not an array at tape index " + index);
+        }
+
+        int end = (int) tape[index] - 1;
+        int i = index + 1;
+        for (int k = 0; k < n && i < end; k++) {
+            i = next(i);
+        }
+        return i < end && n >= 0 ? i : -1;
+    }
+
+    /**
+     * Keys of the object at index, in document order
+     */
+    public List<String> keys(int index) {
+        if (tag(index) != '{') {
+            throw new IllegalArgumentException("Not an object at tape index " + index);
+        }
+
+        List<String> keys = new ArrayList<>();
+        int end = (int) tape[index] - 1;
+        for (int i = index + 1; i < end; i = next(i + 1)) {
+            keys.add(getString(i));
+        }
+        return keys;
+    }
+
+    public String getString(int index) {
+        expect(index, '"');
+        int offset = (int) (tape[index] & PAYLOAD_MASK);
+        return new String(arena, offset, stringLength(offset));
+    }
+
+    public long getLong(int index) {
+        expect(index, 'l');
+        return tape[index + 1];
+    }
+
+    public double getDouble(int index) {
+        char tag = tag(index);
+        if (tag == 'l') {
+            return tape[index + 1];
+        }
+        expect(index, 'd');
+        return Double.longBitsToDouble(tape[index + 1]);
+    }
+
+    public boolean getBoolean(int index) {
+        char tag = tag(index);
+        if (tag != 't' && tag != 'f') {
+            throw new IllegalArgumentException("Not a boolean at tape index " + index);
+        }
+        return tag == 't';
+    }
+
+    public boolean isNull(int index) {
+        return tag(index) == 'n';
+    }
+
+    /**
+     * Convert the whole document to the Map/List form JSONParser.parse returns
+     */
+    public Object toObject() {
+        return toObject(root());
+    }
+
+    public Object toObject(int index) {
+        switch (tag(index)) {
+            case '{': {
+                Map<String, Object> map = new HashMap<>();
+                int end = (int) tape[index] - 1;
+                for (int i = index + 1; i < end; i = next(i + 1)) {
+                    map.put(getString(i), toObject(i + 1));
+                }
+                return map;
+            }
+            case '[': {
+                List<Object> list = new ArrayList<>(size(index));
+                int end = (int) tape[index] - 1;
+                for (int i = index + 1; i < end; i = next(i)) {
+                    list.add(toObject(i));
+                }
+                return list;
+            }
+            case '"':
+                return getString(index);
+            case 'l': {
+                long value = tape[index + 1];
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            }
+            case 'd':
+                return getDouble(index);
+            case 't':
+                return true;
+            case 'f':
+                return false;
+            case 'n':
+                return null;
+            default:
+                throw new IllegalArgumentException("No value starts at tape index " + index);
+        }
+    }
+
+    /**
+     * Approximate heap held by this tape: its two arrays plus their headers
+     */
+    public long retainedBytes() {
+        return 16 + (16 + tape.length * 8L) + (16 + arena.length * 2L);
+    }
+
+    private boolean stringEquals(int index, String key) {
+        int offset = (int) (tape[index] & PAYLOAD_MASK);
+        int length = stringLength(offset);
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int stringLength(int offset) {
+        return (arena[offset - 2] << 16) | arena[offset - 1];
+    }
+
+    private char tag(int index) {
+        return (char) (tape[index] >>> 56);
+    }
+
+    private void expect(int index, char tag) {
+        if (tag(index) != tag) {
+            throw new IllegalArgumentException("Expected " + tag + " at tape index " + index + ", found " + tag(index));
+        }
+    }
+
+    private void checkContainer(int index) {
+        char tag = tag(index);
+        if (tag != '{' && tag != '[') {
+            throw new IllegalArgumentException("Not a container at tape index " + index);
+        }
+    }
+
+    /**
+     * Accumulates tape entries and string characters while JSONParser scans the input
+     */
+    static class Builder {
+        private long[] tape = new long[256];
+        private int size;
+        private char[] arena = new char[1024];
+        private int arenaSize;
+
+        /**
+         * Open a container; returns its index for the matching close
+         */
+        int open(char tag) {
+            return add(entry(tag, 0));
+        }
+
+        void close(int openIndex, int count) {
+            char open = (char) (tape[openIndex] >>> 56);
+            add(entry(open == '{' ? '}' : ']', openIndex));
+            tape[openIndex] = entry(open, ((long) Math.min(count, MAX_COUNT) << 32) | size);
+        }
+
+        void addLong(long value) {
+            add(entry('l', 0));
+            add(value);
+        }
+
+        void addDouble(double value) {
+            add(entry('d', 0));
+            add(Double.doubleToRawLongBits(value));
+        }
+
+        void addLiteral(char tag) {
+            add(entry(tag, 0));
+        }
+
+        /**
+         * Reserve room for a string of the given length and return the arena offset to fill in
+         */
+        int beginString(int length) {
+            int needed = arenaSize + 2 + length;
+            if (needed > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(needed, arena.length * 2));
+            }
+            arena[arenaSize++] = (char) (length >>> 16);
+            arena[arenaSize++] = (char) length;
+            int offset = arenaSize;
+            arenaSize += length;
+            add(entry('"', offset));
+            return offset;
+        }
+
+        /**
+         * Empty the builder for the next document, keeping its grown arrays
+         */
+        void clear() {
+            size = 0;
+            arenaSize = 0;
+        }
+
+        char[] arena() {
+            return arena;
+        }
+
+        JSONTape build() {
+            return new JSONTape(Arrays.copyOf(tape, size), Arrays.copyOf(arena, arenaSize));
+        }
+
+        private int add(long entry) {
+            if (size == tape.length) {
+                tape = Arrays.copyOf(tape, size * 2);
+            }
+            tape[size] = entry;
+            return size++;
+        }
+
+        private static long entry(char tag, long payload) {
+            return ((long) tag << 56) | (payload & PAYLOAD_MASK);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes the model JSONParser produces (Map, List, Number, String, Boolean, null) back to JSON
+ * Output is UTF-8 encoded straight into a reusable byte buffer that is flushed to the target
+ * whenever it fills up. A writer keeps its buffer between calls and is not thread-safe.
+ */
+public class JSONWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    // For each ASCII character: 0 = copy as is, 'u' = \\u00XX escape, otherwise the short escape letter
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+    }
+
+    private final byte[] buf;
+    private int count;
+    private OutputStream out;
+    private ByteBuffer target;
+
+    private boolean pretty = false;
+    private int indent = 2;
+
+    public JSONWriter() {
+        this(8192);
+    }
+
+    public JSONWriter(int bufferSize) {
+        this.buf = new byte[Math.max(64, bufferSize)];
+    }
+
+    /**
+     * Pretty output puts each member and element on its own line, indented by indent spaces per level
+     */
+    public void setPretty(boolean pretty) {
+        this.pretty = pretty;
+    }
+
+    public void setIndent(int indent) {
+        this.indent = Math.max(0, indent);
+    }
+
+    public void write(Object value, OutputStream out) throws IOException {
+        this.out = out;
+        try {
+            writeValue(value, 0);
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.out = null;
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Write into the buffer at its position; throws BufferOverflowException if it runs out of room
+     */
+    public void write(Object value, ByteBuffer target) {
+        this.target = target;
+        try {
+            writeValue(value, 0);
+            flush();
+        } finally {
+            this.target = null;
+            this.count = 0;
+        }
+    }
+
+    public byte[] toBytes(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(value, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public String toString(Object value) {
+        return new String(toBytes(value), StandardCharsets.UTF_8);
+    }
+
+    private void writeValue(Object value, int depth) {
+        if (value == null) {
+            writeRaw(NULL);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Map) {
+            writeObject((Map<?, ?>) value, depth);
+        } else if (value instanceof LongArrayList) {
+            writeLongs((LongArrayList) value, depth);
+        } else if (value instanceof DoubleArrayList) {
+            writeDoubles((DoubleArrayList) value, depth);
+        } else if (value instanceof List) {
+            writeArray((List<?>) value, depth);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            writeAscii(value.toString());
+        } else if (value instanceof Boolean) {
+            writeRaw((Boolean) value ? TRUE : FALSE);
+        } else {
+            throw new IllegalArgumentException("Cannot serialize " + value.getClass().getName() + " as JSON");
+        }
+    }
+
+    private void writeObject(Map<?, ?> map, int depth) {
+        writeByte('{');
+        boolean first = true;
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+            newline(depth + 1);
+            writeString(String.valueOf(entry.getKey()));
+            writeByte(':');
+            if (pretty) {
+                writeByte(' ');
+            }
+            writeValue(entry.getValue(), depth + 1);
+        }
+
+        if (!first) {
+            newline(depth);
+        }
+        writeByte('}');
+    }
+
+    private void writeArray(List<?> list, int depth) {
+        writeByte('[');
+        int size = list.size();
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            newline(depth + 1);
+            writeValue(list.get(i), depth + 1);
+        }
+
+        if (size > 0) {
+            newline(depth);
+        }
+        writeByte(']');
+    }
+
+    private void writeLongs(LongArrayList list, int depth) {
+        writeByte('[');
+        int size = list.size();
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            newline(depth + 1);
+            writeLong(list.getLong(i));
+        }
+
+        if (size > 0) {
+            newline(depth);
+        }
+        writeByte(']');
+    }
+
+    private void writeDoubles(DoubleArrayList list, int depth) {
+        writeByte('[');
+        int size = list.size();
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            newline(depth + 1);
+            writeDouble(list.getDouble(i));
+        }
+
+        if (size > 0) {
+            newline(depth);
+        }
+        writeByte(']');
+    }
+
+    private void newline(int depth) {
+        if (!pretty) {
+            return;
+        }
+        writeByte('\n');
+        for (int i = depth * indent; i > 0; i--) {
+            writeByte(' ');
+        }
+    }
+
+    /**
+     * Write a string with JSON escaping, encoding to UTF-8 as it goes
+     */
+    private void writeString(String s) {
+        writeByte('"');
+        int length = s.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                byte escape = ESCAPES[c];
+                if (escape == 0) {
+                    writeByte(c);
+                } else if (escape == 'u') {
+                    writeUnicodeEscape(c);
+                } else {
+                    ensure(2);
+                    buf[count++] = '\\';
+                    buf[count++] = escape;
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate has no UTF-8 form; keep it as an escape so it survives a round trip
+                writeUnicodeEscape(c);
+            } else {
+                ensure(3);
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        writeByte('"');
+    }
+
+    private void writeUnicodeEscape(char c) {
+        ensure(6);
+        buf[count++] = '\\';
+        buf[count++] = 'u';
+        buf[count++] = HEX[(c >> 12) & 0xF];
+        buf[count++] = HEX[(c >> 8) & 0xF];
+        buf[count++] = HEX[(c >> 4) & 0xF];
+        buf[count++] = HEX[c & 0xF];
+    }
+
+    /**
+     * Format a long directly into the buffer, without going through Long.toString
+     */
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+
+        ensure(20);
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+
+        int end = count + digitCount(value);
+        int i = end;
+        do {
+            buf[--i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        count = end;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void writeDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON cannot represent " + value);
+        }
+
+        // Integral values in the exact range skip Double.toString; the ".0" keeps them doubles on re-parse
+        if (value == Math.rint(value) && Math.abs(value) < 1e15 && !(value == 0 && 1 / value < 0)) {
+            writeLong((long) value);
+            ensure(2);
+            buf[count++] = '.';
+            buf[count++] = '0';
+            return;
+        }
+
+        writeAscii(Double.toString(value));
+    }
+
+    private void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    // Only used for the short literals
+    private void writeRaw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void writeByte(int b) {
+        if (count == buf.length) {
+            flush();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    /**
+     * Make room for n more bytes (at most 20 here, below the 64-byte minimum buffer size)
+     */
+    private void ensure(int n) {
+        if (count + n > buf.length) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (count == 0) {
+            return;
+        }
+        if (out != null) {
+            try {
+                out.write(buf, 0, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            target.put(buf, 0, count);
+        }
+        count = 0;
+    }
+}
@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A bounded cache of canonical object keys that can be shared between JSONParser instances
+ * Keys are looked up straight from the raw input range, so a hit builds no String at all,
+ * and the canonical instance keeps its cached hash code for every map it is put into
+ *
+ * The table is direct-mapped: a colliding key simply replaces the previous entry, so the
+ * cache never grows past its capacity no matter how many distinct keys the input contains.
+ * Slots are written without locking; Strings are immutable, so a racing reader either sees
+ * a complete entry or misses.
+ */
+public class KeyCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_KEY_LENGTH = 64;
+
+    private final String[] entries;
+    private final int mask;
+    private final int maxKeyLength;
+
+    public KeyCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_KEY_LENGTH);
+    }
+
+    /**
+     * Create a cache with the given number of slots (rounded up to a power of two);
+     * keys longer than maxKeyLength are never cached
+     */
+    public KeyCache(int capacity, int maxKeyLength) {
+        if (capacity <= 0 || maxKeyLength <= 0) {
+            throw new IllegalArgumentException("Capacity and max key length must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.entries = new String[size];
+        this.mask = size - 1;
+        this.maxKeyLength = maxKeyLength;
+    }
+
+    /**
+     * Canonical String for the characters in [from, to) of src
+     */
+    public String lookup(String src, int from, int to) {
+        int length = to - from;
+        if (length > maxKeyLength) {
+            return src.substring(from, to);
+        }
+
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + src.charAt(i);
+        }
+
+        int slot = spread(hash) & mask;
+        String cached = entries[slot];
+        if (cached != null && cached.length() == length && cached.regionMatches(0, src, from, length)) {
+            return cached;
+        }
+
+        String key = src.substring(from, to);
+        entries[slot] = key;
+        return key;
+    }
+
+    /**
+     * Canonical String for the UTF-8 bytes in [from, to) of src
+     */
+    public String lookup(byte[] src, int from, int to) {
+        int length = to - from;
+        if (length > maxKeyLength) {
+            return new String(src, from, length, StandardCharsets.UTF_8);
+        }
+
+        // Hash as chars so that ASCII keys land in the same slot regardless of input type
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            byte b = src[i];
+            if (b < 0) {
+                // Non-ASCII keys are rare; decode them rather than compare code points
+                return new String(src, from, length, StandardCharsets.UTF_8);
+            }
+            hash = 31 * hash + b;
+        }
+
+        int slot = spread(hash) & mask;
+        String cached = entries[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == src[from + i]) {
+                i++;
+            }
+            if (i == length) {
+                return cached;
+            }
+        }
+
+        String key = new String(src, from, length, StandardCharsets.ISO_8859_1);
+        entries[slot] = key;
+        return key;
+    }
+
+    /**
+     * Canonical String for the UTF-8 bytes in [from, to) of a buffer, using absolute indexes
+     */
+    public String lookup(ByteBuffer src, int from, int to) {
+        int length = to - from;
+        if (length > maxKeyLength) {
+            return decode(src, from, length);
+        }
+
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            byte b = src.get(i);
+            if (b < 0) {
+                return decode(src, from, length);
+            }
+            hash = 31 * hash + b;
+        }
+
+        int slot = spread(hash) & mask;
+        String cached = entries[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == src.get(from + i)) {
+                i++;
+            }
+            if (i == length) {
+                return cached;
+            }
+        }
+
+        String key = decode(src, from, length);
+        entries[slot] = key;
+        return key;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Drop every cached key
+     */
+    public void clear() {
+        Arrays.fill(entries, null);
+    }
+
+    private static String decode(ByteBuffer src, int from, int length) {
+        byte[] slice = new byte[length];
+        src.get(from, slice);
+        return new String(slice, StandardCharsets.UTF_8);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
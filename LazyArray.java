@@ -0,0 +1,48 @@
+import java.util.*;
+
+/**
+ * Read-only List view over an array indexed by JSONParser.parseLazy
+ * Elements are decoded only when accessed; element offsets are resolved on first random access
+ */
+public class LazyArray extends AbstractList<Object> implements RandomAccess {
+    private final JSONParser parser;
+    private final int[] tape;
+    private final int node;
+    private int[] elements;
+
+    LazyArray(JSONParser parser, int[] tape, int node) {
+        this.parser = parser;
+        this.tape = tape;
+        this.node = node;
+    }
+
+    @Override
+    public int size() {
+        return tape[node + 2];
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+
+        if (elements == null) {
+            elements = new int[size()];
+            int end = tape[node + 1];
+            int n = 0;
+            for (int i = node + 3; i < end; i = next(tape, i)) {
+                elements[n++] = i;
+            }
+        }
+
+        return parser.valueAt(tape, elements[index]);
+    }
+
+    /**
+     * Tape index just past the value at index, skipping any nested entries
+     */
+    static int next(int[] tape, int index) {
+        return tape[index] >= 0 ? index + 1 : tape[index + 1];
+    }
+}
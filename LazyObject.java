@@ -0,0 +1,85 @@
+import java.util.*;
+
+/**
+ * Read-only Map view over an object indexed by JSONParser.parseLazy
+ * Fields are located by walking the structural tape and are decoded only when accessed
+ * Iteration follows document order; if a key is repeated, get returns the last value like the
+ * eager parser does, but iteration still visits every occurrence
+ */
+public class LazyObject extends AbstractMap<String, Object> {
+    private final JSONParser parser;
+    private final int[] tape;
+    private final int node;
+
+    LazyObject(JSONParser parser, int[] tape, int node) {
+        this.parser = parser;
+        this.tape = tape;
+        this.node = node;
+    }
+
+    @Override
+    public int size() {
+        return tape[node + 2];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int value = find((String) key);
+        return value < 0 ? null : parser.valueAt(tape, value);
+    }
+
+    /**
+     * Tape index of the value for key, or -1; the last occurrence wins, as with a HashMap
+     */
+    private int find(String key) {
+        int found = -1;
+        int end = tape[node + 1];
+        for (int i = node + 3; i < end; i = LazyArray.next(tape, i + 1)) {
+            if (parser.stringEquals(tape[i], key)) {
+                found = i + 1;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return LazyObject.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int i = node + 3;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < tape[node + 1];
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String key = parser.stringAt(tape[i]);
+                        Object value = parser.valueAt(tape, i + 1);
+                        i = LazyArray.next(tape, i + 1);
+                        return new SimpleImmutableEntry<>(key, value);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-size list of JSON integers backed by a long[]
+ * Elements box on access with the same narrowing JSONParser applies (Integer where it fits)
+ */
+public class LongArrayList extends AbstractList<Object> implements RandomAccess {
+    private final long[] values;
+    private final int size;
+
+    LongArrayList(long[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        long value = getLong(index);
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    public long getLong(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parser for newline-delimited JSON (JSON Lines)
+ * A reader thread cuts the input into batches of whole lines, a pool of workers parses the
+ * batches concurrently, and records are handed out in input order. The queue of in-flight
+ * batches is bounded, so a slow consumer stalls the reader instead of buffering the input.
+ */
+public class NDJSONParser implements Closeable {
+    private final InputStream in;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1 << 20;
+    private int queueCapacity = 0;
+    private KeyCache keyCache = new KeyCache();
+
+    private ExecutorService pool;
+    private Thread readerThread;
+    private BlockingQueue<Future<List<Object>>> inFlight;
+
+    // Marks the end of the input in the in-flight queue
+    private static final Future<List<Object>> END = CompletableFuture.completedFuture(null);
+
+    public NDJSONParser(InputStream in) {
+        this.in = in;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Approximate number of bytes handed to a worker at once
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1024, batchSize);
+    }
+
+    /**
+     * Maximum number of batches read ahead of the consumer; defaults to twice the worker count
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Key cache shared by all workers, or null to disable it
+     */
+    public void setKeyCache(KeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * Deliver every record to the callback, in input order, on the calling thread
+     */
+    public void forEach(Consumer<Object> callback) {
+        Iterator<Object> records = iterator();
+        while (records.hasNext()) {
+            callback.accept(records.next());
+        }
+    }
+
+    /**
+     * Ordered stream of records; close the stream (or this parser) to stop early
+     */
+    public Stream<Object> stream() {
+        Spliterator<Object> spliterator = Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    private Iterator<Object> iterator() {
+        start();
+
+        return new Iterator<Object>() {
+            private List<Object> batch = Collections.emptyList();
+            private int index = 0;
+            private boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!done && index == batch.size()) {
+                    Future<List<Object>> next = take();
+                    if (next == END) {
+                        done = true;
+                        close();
+                    } else {
+                        batch = await(next);
+                        index = 0;
+                    }
+                }
+                return !done;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(index++);
+            }
+        };
+    }
+
+    private synchronized void start() {
+        if (pool != null) {
+            throw new IllegalStateException("NDJSONParser input can only be consumed once");
+        }
+
+        int capacity = queueCapacity > 0 ? queueCapacity : workers * 2;
+        inFlight = new ArrayBlockingQueue<>(capacity);
+        pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "ndjson-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        readerThread = new Thread(this::readBatches, "ndjson-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Reader thread: cut the input at the last newline of each block and queue a parse task per batch
+     */
+    private void readBatches() {
+        byte[] block = new byte[batchSize];
+        int filled = 0;
+        long lineNumber = 1;
+
+        try {
+            while (true) {
+                int n = in.read(block, filled, block.length - filled);
+                if (n < 0) {
+                    break;
+                }
+                filled += n;
+
+                int cut = lastNewline(block, filled);
+                if (cut < 0) {
+                    // One line longer than the block; grow until the line fits
+                    if (filled == block.length) {
+                        block = Arrays.copyOf(block, block.length * 2);
+                    }
+                    continue;
+                }
+
+                if (cut + 1 >= batchSize / 2 || filled == block.length) {
+                    byte[] next = new byte[Math.max(batchSize, filled - cut - 1)];
+                    System.arraycopy(block, cut + 1, next, 0, filled - cut - 1);
+                    lineNumber = submit(block, cut + 1, lineNumber);
+                    filled -= cut + 1;
+                    block = next;
+                }
+            }
+
+            if (filled > 0) {
+                submit(block, filled, lineNumber);
+            }
+            inFlight.put(END);
+        } catch (IOException e) {
+            failWith(new UncheckedIOException(e));
+        } catch (InterruptedException e) {
+            // Closed by the consumer
+        } catch (RuntimeException | Error e) {
+            // A failing stream, a rejected task or running out of memory; the consumer
+            // must still get a terminal element instead of waiting forever
+            block = null;
+            failWith(e);
+        }
+    }
+
+    private long submit(byte[] data, int length, long firstLine) throws InterruptedException {
+        inFlight.put(pool.submit(() -> parseBatch(data, length, firstLine)));
+
+        long lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (data[i] == '\n') {
+                lines++;
+            }
+        }
+        return firstLine + lines;
+    }
+
+    private void failWith(Throwable e) {
+        CompletableFuture<List<Object>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        try {
+            inFlight.put(failed);
+        } catch (InterruptedException ignored) {
+            // Closed by the consumer; nobody is left to report to
+        }
+    }
+
+    /**
+     * Worker: parse each non-blank line of a batch
+     */
+    private List<Object> parseBatch(byte[] data, int length, long firstLine) {
+        List<Object> records = new ArrayList<>();
+        JSONParser parser = null;
+        long lineNumber = firstLine;
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            if (!isBlank(data, lineStart, lineEnd)) {
+                // One parser per batch, reset for every line
+                if (parser == null) {
+                    parser = new JSONParser(data, lineStart, lineEnd - lineStart);
+                    parser.setKeyCache(keyCache);
+                } else {
+                    parser.reset(data, lineStart, lineEnd - lineStart);
+                }
+                try {
+                    records.add(parser.parse());
+                } catch (JSONParseException e) {
+                    throw e.onLine(lineNumber);
+                }
+            }
+
+            lineStart = lineEnd + 1;
+            lineNumber++;
+        }
+
+        return records;
+    }
+
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lastNewline(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Future<List<Object>> take() {
+        try {
+            return inFlight.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for records", e);
+        }
+    }
+
+    private List<Object> await(Future<List<Object>> batch) {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for records", e);
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Stop the reader and the workers; the underlying stream is left open
+     */
+    @Override
+    public synchronized void close() {
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.*;
+
+/**
+ * Read-only Map for a JSON object, built by JSONParser when setCompactObjects is enabled
+ * Objects with the same keys in the same order share one immutable Shape holding the key array
+ * and its index, so each instance only stores its values. For arrays of records this takes a
+ * fraction of the memory of a HashMap with its table and one entry node per member.
+ *
+ * Iteration follows document order; if a key is repeated, the last value is kept at the
+ * position of the first occurrence.
+ */
+public class ShapedObject extends AbstractMap<String, Object> {
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final int INITIAL_CAPACITY = 4;
+
+    static final ShapedObject EMPTY = new ShapedObject(new Shape());
+
+    private Shape shape;
+    private Object[] values;
+
+    /**
+     * Empty object under construction, starting from the root of a shape tree
+     */
+    ShapedObject(Shape root) {
+        this.shape = root;
+        this.values = NO_VALUES;
+    }
+
+    /**
+     * Add a member while the object is being built; returns false when the shape tree has
+     * no room for this key sequence, in which case the caller stores the object another way
+     */
+    boolean add(String key, Object value) {
+        Shape next = shape.transition(key);
+        if (next == null) {
+            // A known transition never repeats a key, so only new ones need the duplicate check
+            int index = shape.indexOf(key);
+            if (index >= 0) {
+                values[index] = value;
+                return true;
+            }
+
+            next = shape.extend(key);
+            if (next == null) {
+                return false;
+            }
+        }
+
+        int index = shape.keys.length;
+        if (index == values.length) {
+            // The first key usually tells how many members the object will end up with
+            int capacity = index == 0 ? next.first.expectedSize : index * 2;
+            values = Arrays.copyOf(values, Math.max(capacity, index + 1));
+        }
+        values[index] = value;
+        shape = next;
+        return true;
+    }
+
+    /**
+     * Trim the values to the final size once the closing brace has been read
+     */
+    void finish() {
+        int size = shape.keys.length;
+        if (size == 0) {
+            return;
+        }
+        shape.first.expectedSize = size;
+        if (values.length != size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public int size() {
+        return shape.keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape.indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = shape.indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                return ShapedObject.this.size();
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return containsKey(key);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return Collections.unmodifiableList(Arrays.asList(shape.keys)).iterator();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return ShapedObject.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < shape.keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(shape.keys[i], values[i]);
+                        i++;
+                        return entry;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An ordered key sequence shared by every object that has exactly these keys
+     * Shapes form a tree rooted at an empty shape: adding a key follows (or creates) the
+     * transition to the child shape for that key. A tree belongs to one parser and is only
+     * extended by it; the keys and index of a shape never change once it exists.
+     */
+    static final class Shape {
+        // Objects with more keys, or arriving once the tree is full, are stored as HashMaps
+        static final int MAX_KEYS = 64;
+        static final int MAX_SHAPES = 4096;
+
+        // Up to this many keys a linear scan beats hashing
+        private static final int LINEAR_SCAN = 8;
+
+        final String[] keys;
+
+        // Open-addressed key index holding index + 1 per slot; null for small shapes
+        private final int[] table;
+
+        // Ancestor holding the first key; remembers how many members such objects end up with
+        private final Shape first;
+        private int expectedSize = INITIAL_CAPACITY;
+
+        private final Shape root;
+        private int shapeCount;
+
+        // Most shapes only ever lead to one child, kept inline; any further ones go in the map
+        private String firstKey;
+        private Shape firstChild;
+        private Map<String, Shape> transitions;
+
+        /**
+         * Root of a new shape tree
+         */
+        Shape() {
+            this.keys = new String[0];
+            this.table = null;
+            this.first = null;
+            this.root = this;
+        }
+
+        private Shape(Shape parent, String key) {
+            int n = parent.keys.length;
+            this.keys = Arrays.copyOf(parent.keys, n + 1);
+            this.keys[n] = key;
+            this.root = parent.root;
+            this.first = n == 0 ? this : parent.first;
+
+            if (keys.length > LINEAR_SCAN) {
+                table = new int[Integer.highestOneBit(keys.length) << 2];
+                int mask = table.length - 1;
+                for (int i = 0; i < keys.length; i++) {
+                    int slot = spread(keys[i].hashCode()) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = i + 1;
+                }
+            } else {
+                table = null;
+            }
+        }
+
+        int indexOf(Object key) {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+
+            if (table == null) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] == key || keys[i].equals(key)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            int mask = table.length - 1;
+            for (int slot = spread(key.hashCode()) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                String candidate = keys[table[slot] - 1];
+                if (candidate == key || candidate.equals(key)) {
+                    return table[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Existing child shape with key appended, or null
+         */
+        Shape transition(String key) {
+            if (firstKey == key || (firstKey != null && firstKey.equals(key))) {
+                return firstChild;
+            }
+            return transitions != null ? transitions.get(key) : null;
+        }
+
+        /**
+         * New child shape with key appended, or null if the object is too large or the tree is full
+         */
+        Shape extend(String key) {
+            if (keys.length == MAX_KEYS || root.shapeCount == MAX_SHAPES) {
+                return null;
+            }
+
+            Shape next = new Shape(this, key);
+            if (firstKey == null) {
+                firstKey = key;
+                firstChild = next;
+            } else {
+                if (transitions == null) {
+                    transitions = new HashMap<>(4);
+                }
+                transitions.put(key, next);
+            }
+            root.shapeCount++;
+            return next;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
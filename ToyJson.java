@@ -1,17 +1,26 @@
 /// usr/bin/env jbang "$0" "$@" ; exit $?
+//SOURCES JSONParser.java KeyCache.java LazyObject.java LazyArray.java LongArrayList.java DoubleArrayList.java
+//SOURCES NDJSONParser.java JSONFormatter.java JSONQuery.java JSONTape.java JSONBinding.java JSONParseException.java
+//SOURCES ShapedObject.java JSONParseListener.java JSONParseEvent.java
 
 import java.io.*;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Supplier;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.System.out;
-import static java.nio.file.Files.lines;
 
 public class ToyJson {
 
@@ -21,6 +30,26 @@ public class ToyJson {
         // check for valid input
         if (args.length == 0 || args[0].equals("")) {
             out.println("Provide valid input");
+        } else if (args[0].equals("--ndjson")) {
+            if (args.length < 2 || !helper.prepareFile(args[1]).exists()) {
+                out.println("Provide valid input");
+            } else {
+                try {
+                    helper.readNdjsonFile(helper.prepareFile(args[1]));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } else if (args[0].equals("--validate")) {
+            if (args.length < 2 || !helper.prepareFile(args[1]).exists()) {
+                out.println("Provide valid input");
+            } else {
+                try {
+                    helper.validateTree(helper.prepareFile(args[1]).toPath());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
         } else {
             if (helper.isValidJsonFile(args[0])) {
                 out.println("Json file");
@@ -38,23 +67,18 @@ public class ToyJson {
 
     static class ToyJsonHelper {
 
+        // files larger than this are mapped instead of read into the worker's buffer
+        private static final long MAP_THRESHOLD = 16L << 20;
+
         // input file validation based on the file extension
         private boolean isValidJsonFile(String fileNameStr) {
-            boolean result = false;
             File jsonFile = prepareFile(fileNameStr);
+            return jsonFile != null && jsonFile.exists() && hasJsonExtension(jsonFile.getName());
+        }
 
-            if (jsonFile != null && jsonFile.exists()) {
-                String fileName = jsonFile.getName();
-                int index = fileName.lastIndexOf(".");
-
-                if (index > 0) {
-                    String extension = fileName.substring(index + 1);
-                    if (extension.equals("json")) {
-                        result = true;
-                    }
-                }
-            }
-            return result;
+        private boolean hasJsonExtension(String fileName) {
+            int index = fileName.lastIndexOf(".");
+            return index > 0 && fileName.substring(index + 1).equals("json");
         }
 
         private File prepareFile(String fileNameStr) {
@@ -69,160 +93,182 @@ public class ToyJson {
         }
 
         private void readTextFile(File file) throws IOException {
-            // supplier to reuse stream
-            Supplier<Stream<String>> lineSupplier = () -> {
+            // map the file once; every step below works off the same bytes
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                // check for array or object
+                boolean isArray = firstNonWhitespace(buffer) == '[';
+
+                // parse nested obj
+                parseNestedObj(buffer);
+
+                // nothing below uses the values yet, so only check that the document is well formed
                 try {
-                    return lines(Paths.get(file.getPath()));
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                    new JSONParser(buffer).validate();
+                } catch (RuntimeException e) {
+                    out.println("Error parsing JSON: " + e.getMessage());
+                    return;
                 }
-            };
-
-            // check for array or object
-            boolean isArray =
-                    lineSupplier
-                            .get()
-                            .filter(line -> !line.trim().isEmpty())
-                            .findFirst()
-                            .get()
-                            .charAt(0) ==
-                            '[';
-
-            // parse nested obj
-            parseNestedObj(file);
-
-            if (isArray) {
-                HashMap<String, Object> parsedObjMap = (HashMap<
-                        String,
-                        Object
-                        >) parseArray(lineSupplier);
-                //                JObject jObject = new JObject(parsedObjMap);
-                //                jObject.display();
-                //
-                //                JArray jArray = new JArray();lineSupplier
-                //                jArray.addObj(jObject);
-                //                jArray.display();
-            } else {
-                //                HashMap<String, Object> parsedObjMap = (HashMap<String, Object>) parseObject(lineSupplier);
-                //                parseMapForObject(parsedObjMap);
-                //                JObject jObject = new JObject(parsedObjMap);
-                //                jObject.display();
-            }
-        }
 
-        private void parseMapForObject(HashMap<String, Object> inputMap) {
-            out.println("map content\n");
-            inputMap.forEach((key, value) -> {
-                out.println(key + " : " + value);
-            });
+                if (isArray) {
+                    //                JObject jObject = new JObject(parsedObjMap);
+                    //                jObject.display();
+                    //
+                    //                JArray jArray = new JArray();
+                    //                jArray.addObj(jObject);
+                    //                jArray.display();
+                } else {
+                    //                HashMap<String, Object> parsedObjMap = (HashMap<String, Object>) parsed;
+                    //                parseMapForObject(parsedObjMap);
+                    //                JObject jObject = new JObject(parsedObjMap);
+                    //                jObject.display();
+                }
+            }
         }
 
-        private void parseNestedObj(File file) {
-            try {
-                BufferedReader br = new BufferedReader(new FileReader(file));
-                StringBuilder sb = new StringBuilder();
-                String nextLine;
-
-                while ((nextLine = br.readLine()) != null) {
-                    sb.append(nextLine);
+        // first significant byte of the file, or -1 if it is blank
+        private int firstNonWhitespace(MappedByteBuffer buffer) {
+            for (int i = 0; i < buffer.limit(); i++) {
+                byte b = buffer.get(i);
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return b;
                 }
+            }
+            return -1;
+        }
 
-                br.close();
-                out.println("res:\n" + sb);
-
-                // {  "Image": {    "Width":  800,    "Height": 600,    "Title":  "View from 15th Floor",    "Thumbnail": {      "Url":    "http://www.example.com/image/481989943",      "Height": 125,      "Width":  100    },    "Animated" : false,    "IDs": [116, 943, 234, 38793]  }}
+        // newline-delimited JSON: records are parsed concurrently, only the totals are printed
+        private void readNdjsonFile(File file) throws IOException {
+            long startTime = System.nanoTime();
+            long[] records = {0};
+
+            try (InputStream in = new FileInputStream(file);
+                 NDJSONParser parser = new NDJSONParser(in)) {
+                parser.forEach(record -> records[0]++);
+            } catch (RuntimeException e) {
+                out.println("Error parsing JSON: " + e.getMessage());
+                return;
+            }
 
-                // beautify
-                String resultString;
-                resultString = Arrays.stream(sb
-                        .chars()
-                        .mapToObj(c -> {
-                            char character = (char) c;
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            out.printf("Parsed %d records in %.3f s (%.1f MB/s)%n",
+                    records[0], seconds, file.length() / (1024.0 * 1024.0) / seconds);
+        }
 
-                            if (isOpeningPunctuation(character))
-                                return character + "\n";
-                            else if (isClosingPunctuation(character))
-                                return "\n" + character;
-                            else
-                                return character + "";
+        // validate every .json file under root concurrently, without building any values
+        private void validateTree(Path root) throws IOException {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(root)) {
+                files = paths.filter(Files::isRegularFile)
+                        .filter(path -> hasJsonExtension(path.getFileName().toString()))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
 
-                        })
-                        .map(str->str.split(":"))
-                        .toArray())
-                                .map(str->str.toString().trim())
-                        .collect(Collectors.joining());
+            long startTime = System.nanoTime();
+            int threads = Runtime.getRuntime().availableProcessors();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            // one parser and read buffer per worker thread, reset for every file
+            ThreadLocal<FileValidator> validators = ThreadLocal.withInitial(FileValidator::new);
 
-                out.println("res1:\n" + resultString);
+            List<Future<FileValidator.Result>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                results.add(pool.submit(() -> validators.get().validate(file)));
+            }
 
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
-            } catch (IOException e) {
+            long bytes = 0;
+            int invalid = 0;
+            try {
+                for (int i = 0; i < files.size(); i++) {
+                    FileValidator.Result result = results.get(i).get();
+                    bytes += result.size;
+                    if (result.error != null) {
+                        invalid++;
+                        out.println(files.get(i) + ": " + result.error);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                pool.shutdownNow();
             }
-        }
 
-        // Helper method to check for punctuation
-        private boolean isOpeningPunctuation(char c) {
-            return c == '{' || c == ',' || c == '[';
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            out.printf("Validated %d files (%d invalid), %.1f MB in %.3f s (%.1f MB/s) on %d threads%n",
+                    files.size(), invalid, bytes / (1024.0 * 1024.0), seconds,
+                    bytes / (1024.0 * 1024.0) / seconds, threads);
         }
 
-        private boolean isClosingPunctuation(char c) {
-            return c == '}' || c == ']';
+        private void parseMapForObject(HashMap<String, Object> inputMap) {
+            out.println("map content\n");
+            inputMap.forEach((key, value) -> {
+                out.println(key + " : " + value);
+            });
         }
 
+        private void parseNestedObj(MappedByteBuffer buffer) throws IOException {
+            // stream straight from the mapped file to stdout, never holding the document in memory
+            JSONFormatter formatter = new JSONFormatter();
+
+            out.println("res:");
+            formatter.setMinify(true);
+            formatter.format(buffer, out);
+            out.println();
 
-        private Map<String, Object> parseObject(
-                Supplier<Stream<String>> supplier
-        ) {
-            // single linear object : test.json
-            return supplier
-                    .get()
-                    .filter(line -> !line.trim().isEmpty()) // Filter out empty lines
-                    .filter(line -> !line.trim().equals("{")) // ignore {
-                    .filter(line -> !line.trim().equals("}")) // ignore }
-                    .filter(line -> !line.trim().equals("[")) // ignore [
-                    .filter(line -> !line.trim().equals("]")) // ignore ]
-                    .map(line -> line.split(":", 2)) // Split each pair by colon
-                    .collect(
-                            Collectors.toMap(
-                                    line -> line[0].trim(),
-                                    line -> line[1].trim(),
-                                    (oldValue, newValue) -> oldValue // Merge function: keep the old value
-                            )
-                    );
+            // beautify
+            out.println("res1:");
+            formatter.setMinify(false);
+            formatter.format(buffer, out);
+            out.println();
         }
+    }
 
-        private Map<String, Object> parseArray(
-                Supplier<Stream<String>> supplier
-        ) {
-            /*[
-                {
-                    "name": "test1"
-                },
-                {
-                    "name": "test2"
+    // per-thread validation state: a reusable read buffer and parser
+    static class FileValidator {
+        private final JSONParser parser = new JSONParser(new byte[0]);
+        private byte[] buffer = new byte[64 * 1024];
+
+        // the file's size, and its parse or read error if it is not valid JSON; never throws,
+        // so that one bad file is reported instead of ending the whole run
+        Result validate(Path file) {
+            long size = 0;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                size = channel.size();
+
+                if (size > ToyJsonHelper.MAP_THRESHOLD) {
+                    parser.reset(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                } else {
+                    if (size > buffer.length) {
+                        buffer = new byte[(int) size];
+                    }
+                    ByteBuffer target = ByteBuffer.wrap(buffer, 0, (int) size);
+                    while (target.hasRemaining() && channel.read(target) >= 0) {
+                        // keep reading until the file is in the buffer
+                    }
+                    parser.reset(buffer, 0, target.position());
                 }
-            ]*/
-
-            Map<String, Object> result = supplier
-                    .get()
-                    .filter(line -> !line.trim().isEmpty()) // Filter out empty lines
-                    .filter(line -> !line.trim().equals("[")) // ignore [
-                    .filter(line -> !line.trim().equals("{")) // ignore [
-                    .filter(line -> !line.trim().equals("}")) // ignore [
-                    .filter(line -> !line.trim().equals("},")) // ignore [
-                    .filter(line -> !line.trim().equals("]")) // ignore ]
-                    .map(line -> line.split(":")) // Split each obj by ,
-                    .filter(line -> !line.equals(","))
-                    .collect(
-                            Collectors.toMap(
-                                    line -> line[0],
-                                    line -> line[1],
-                                    (oldValue, newValue) -> oldValue
-                            )
-                    );
-
-            return new HashMap<>();
+
+                parser.validate();
+                return new Result(size, null);
+            } catch (RuntimeException e) {
+                return new Result(size, e.getMessage());
+            } catch (IOException e) {
+                return new Result(size, "Cannot read file: " + e);
+            }
+        }
+
+        static final class Result {
+            final long size;
+            final String error;
+
+            Result(long size, String error) {
+                this.size = size;
+                this.error = error;
+            }
         }
     }
 
@@ -0,0 +1,538 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+//DEPS org.openjdk.jmh:jmh-core:1.37
+//DEPS org.openjdk.jmh:jmh-generator-annprocess:1.37
+//SOURCES ../JSONParser.java ../JSONReader.java ../KeyCache.java ../LazyObject.java ../LazyArray.java
+//SOURCES ../LongArrayList.java ../DoubleArrayList.java ../JSONQuery.java ../JSONTape.java ../JSONBinding.java ../JSONParseException.java
+//SOURCES ../ShapedObject.java ../JSONParseListener.java ../JSONParseEvent.java ../JSONParseMetrics.java
+//SOURCES ../JSONParserPool.java ../JSONParseCache.java ../JSONBinary.java
+
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH baseline for JSONParser across payload shapes
+ *
+ * Run from the repository root (allocation rate per op comes from the gc profiler):
+ *   jbang bench/JSONParserBench.java -prof gc
+ *   jbang bench/JSONParserBench.java -p shape=users -p megabytes=100 -prof gc
+ *
+ * The plain shape holds the same strings as strings without any escapes; its B/op from -prof gc
+ * should be the result list and the strings themselves, since the fast path copies each run once.
+ * That is checked without JMH by:
+ *   jbang bench/JSONParserBench.java --check-allocation
+ *
+ * JMH refuses benchmarks in the default package, and named packages cannot see the parser's
+ * default-package classes, so the parser is reached through static final method handles,
+ * which the JIT inlines just like direct calls.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class JSONParserBench {
+
+    @State(Scope.Benchmark)
+    public static class Payload {
+        @Param({"small", "deep", "numbers", "strings", "plain", "users"})
+        String shape;
+
+        // Only used by the users shape: users.json repeated up to roughly this size
+        @Param({"1"})
+        int megabytes;
+
+        String text;
+        byte[] bytes;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            text = Payloads.build(shape, megabytes);
+            bytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Sparse {
+        @Param({"1", "100"})
+        int megabytes;
+
+        byte[] bytes;
+        int middle;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            bytes = Payloads.users(megabytes).getBytes(StandardCharsets.UTF_8);
+            middle = ((List<?>) Parser.parse(Parser.fromBytes(bytes))).size() / 2;
+        }
+    }
+
+    @Benchmark
+    public Object parseString(Payload payload) throws Throwable {
+        return Parser.parse(Parser.fromString(payload.text));
+    }
+
+    @Benchmark
+    public Object parseBytes(Payload payload) throws Throwable {
+        return Parser.parse(Parser.fromBytes(payload.bytes));
+    }
+
+    /**
+     * parseBytes splitting large top-level arrays across the common ForkJoinPool; compare with
+     * parseBytes on the users shape at -p megabytes=100 (smaller inputs are parsed sequentially)
+     */
+    @Benchmark
+    public Object parseParallel(Payload payload) throws Throwable {
+        return Parser.parseParallel(Parser.fromBytes(payload.bytes));
+    }
+
+    @State(Scope.Thread)
+    public static class Reused {
+        Object parser;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            parser = Parser.fromBytes(new byte[0]);
+        }
+    }
+
+    /**
+     * parseBytes with one parser per thread, reset for every document
+     */
+    @Benchmark
+    public Object parseReused(Payload payload, Reused reused) throws Throwable {
+        return Parser.parse(Parser.reset(reused.parser, payload.bytes));
+    }
+
+    @State(Scope.Thread)
+    public static class Observed {
+        // none: instrumentation disabled, which must cost the same as parseReused
+        @Param({"none", "metrics"})
+        String listener;
+
+        Object parser;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            parser = Parser.fromBytes(new byte[0]);
+            if (listener.equals("metrics")) {
+                Parser.setListener(parser, Parser.newMetrics());
+            }
+        }
+    }
+
+    /**
+     * parseReused with and without a JSONParseMetrics listener; add
+     * -jvmArgsAppend -XX:StartFlightRecording to measure with the JFR event recording too
+     */
+    @Benchmark
+    public Object parseObserved(Payload payload, Observed observed) throws Throwable {
+        return Parser.parse(Parser.reset(observed.parser, payload.bytes));
+    }
+
+    @State(Scope.Thread)
+    public static class Compact {
+        Object parser;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            parser = Parser.fromBytes(new byte[0]);
+            Parser.setCompactObjects(parser, true);
+        }
+    }
+
+    /**
+     * parseReused building ShapedObjects, whose shapes carry over between documents
+     */
+    @Benchmark
+    public Object parseCompact(Payload payload, Compact compact) throws Throwable {
+        return Parser.parse(Parser.reset(compact.parser, payload.bytes));
+    }
+
+    @State(Scope.Benchmark)
+    public static class Cached {
+        Object cache;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            cache = Parser.newCache(256L << 20);
+        }
+    }
+
+    /**
+     * Repeated payload through JSONParseCache: every call after the first is a hit
+     * (hash plus comparison with the cached input)
+     */
+    @Benchmark
+    public Object parseCached(Payload payload, Cached cached) throws Throwable {
+        return Parser.parseCached(cached.cache, payload.bytes);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Encoded {
+        byte[] binary;
+
+        @Setup(Level.Trial)
+        public void setup(Payload payload) throws Throwable {
+            binary = Parser.encodeBinary(Parser.parse(Parser.fromBytes(payload.bytes)));
+        }
+    }
+
+    /**
+     * Rebuild the parse() result from its JSONBinary encoding instead of from the JSON text
+     */
+    @Benchmark
+    public Object decodeBinary(Encoded encoded) throws Throwable {
+        return Parser.decodeBinary(encoded.binary);
+    }
+
+    /**
+     * Grammar check only; nothing is materialized
+     */
+    @Benchmark
+    public void validate(Payload payload) throws Throwable {
+        Parser.validate(Parser.fromBytes(payload.bytes));
+    }
+
+    @Benchmark
+    public Object parseLazy(Payload payload) throws Throwable {
+        return Parser.parseLazy(Parser.fromBytes(payload.bytes));
+    }
+
+    /**
+     * Read a handful of fields from one record of a large document, building the full tree first
+     */
+    @Benchmark
+    public void sparseEager(Sparse sparse, Blackhole bh) throws Throwable {
+        readFields((List<?>) Parser.parse(Parser.fromBytes(sparse.bytes)), sparse.middle, bh);
+    }
+
+    /**
+     * The same reads against the lazy views, which only decode what is touched
+     */
+    @Benchmark
+    public void sparseLazy(Sparse sparse, Blackhole bh) throws Throwable {
+        readFields((List<?>) Parser.parseLazy(Parser.fromBytes(sparse.bytes)), sparse.middle, bh);
+    }
+
+    /**
+     * Bind the whole document straight to records instead of building maps first
+     */
+    @Benchmark
+    public Object bindUsers(Sparse sparse) throws Throwable {
+        return Parser.parseList(Parser.fromBytes(sparse.bytes), User.class);
+    }
+
+    public record Geo(String lat, String lng) {
+    }
+
+    public record Address(String street, String suite, String city, String zipcode, Geo geo) {
+    }
+
+    public record Company(String name, String catchPhrase, String bs) {
+    }
+
+    public record User(int id, String name, String username, String email, Address address,
+                       String phone, String website, Company company) {
+    }
+
+    private static void readFields(List<?> users, int index, Blackhole bh) {
+        Map<?, ?> user = (Map<?, ?>) users.get(index);
+        bh.consume(user.get("id"));
+        bh.consume(user.get("name"));
+        bh.consume(user.get("email"));
+        bh.consume(((Map<?, ?>) user.get("address")).get("city"));
+    }
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length == 1 && args[0].equals("--check-allocation")) {
+            checkAllocation();
+            return;
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    /**
+     * Fail unless parsing escape-free strings allocates only the strings and the list holding them;
+     * a StringBuilder per string would add at least its 24-byte header and a copy of the text
+     */
+    static void checkAllocation() throws Throwable {
+        int count = 10_000;
+        byte[] bytes = Payloads.plainStrings(count).getBytes(StandardCharsets.UTF_8);
+        Object parser = Parser.fromBytes(bytes);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Warm up until the parse is compiled, then measure one document at a time
+        for (int i = 0; i < 200; i++) {
+            Parser.parse(Parser.reset(parser, bytes));
+        }
+        long allocated = Long.MAX_VALUE;
+        List<?> strings = null;
+        for (int i = 0; i < 20; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            strings = (List<?>) Parser.parse(Parser.reset(parser, bytes));
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+        }
+
+        // Compact strings: a String plus its byte[], each with a 16-byte aligned header
+        long expected = 0;
+        for (Object s : strings) {
+            expected += 24 + align(16 + ((String) s).length());
+        }
+        // The ArrayList and every backing array it grew through (growth by half: under 3x the last)
+        long list = 24 + 3 * align(16 + 4L * count);
+        long perString = (allocated - expected - list) / count;
+
+        System.out.printf("%d strings: %d bytes allocated, %d for the strings, %d per string unaccounted%n",
+                count, allocated, expected, Math.max(perString, 0));
+        if (perString >= 24) {
+            throw new AssertionError("Escape-free strings allocate " + perString + " extra bytes each");
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Entry points into the default-package JSONParser
+     */
+    static class Parser {
+        private static final MethodHandle FROM_STRING;
+        private static final MethodHandle FROM_BYTES;
+        private static final MethodHandle PARSE;
+        private static final MethodHandle PARSE_LAZY;
+        private static final MethodHandle PARSE_PARALLEL;
+        private static final MethodHandle RESET;
+        private static final MethodHandle PARSE_LIST;
+        private static final MethodHandle VALIDATE;
+        private static final MethodHandle SET_COMPACT_OBJECTS;
+        private static final MethodHandle SET_LISTENER;
+        private static final MethodHandle NEW_METRICS;
+        private static final MethodHandle NEW_CACHE;
+        private static final MethodHandle PARSE_CACHED;
+        private static final MethodHandle ENCODE_BINARY;
+        private static final MethodHandle DECODE_BINARY;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                Class<?> parser = Class.forName("JSONParser");
+                MethodType call = MethodType.methodType(Object.class, Object.class);
+                FROM_STRING = lookup.findConstructor(parser, MethodType.methodType(void.class, String.class))
+                        .asType(MethodType.methodType(Object.class, String.class));
+                FROM_BYTES = lookup.findConstructor(parser, MethodType.methodType(void.class, byte[].class))
+                        .asType(MethodType.methodType(Object.class, byte[].class));
+                PARSE = lookup.findVirtual(parser, "parse", MethodType.methodType(Object.class)).asType(call);
+                PARSE_LAZY = lookup.findVirtual(parser, "parseLazy", MethodType.methodType(Object.class)).asType(call);
+                PARSE_PARALLEL = lookup.findVirtual(parser, "parseParallel", MethodType.methodType(Object.class)).asType(call);
+                VALIDATE = lookup.findVirtual(parser, "validate", MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(void.class, Object.class));
+                PARSE_LIST = lookup.findVirtual(parser, "parseList", MethodType.methodType(List.class, Class.class))
+                        .asType(MethodType.methodType(Object.class, Object.class, Class.class));
+                SET_COMPACT_OBJECTS = lookup.findVirtual(parser, "setCompactObjects", MethodType.methodType(void.class, boolean.class))
+                        .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+                Class<?> listener = Class.forName("JSONParseListener");
+                SET_LISTENER = lookup.findVirtual(parser, "setListener", MethodType.methodType(void.class, listener))
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                NEW_METRICS = lookup.findConstructor(Class.forName("JSONParseMetrics"), MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                Class<?> cache = Class.forName("JSONParseCache");
+                NEW_CACHE = lookup.findConstructor(cache, MethodType.methodType(void.class, long.class))
+                        .asType(MethodType.methodType(Object.class, long.class));
+                PARSE_CACHED = lookup.findVirtual(cache, "parse", MethodType.methodType(Object.class, byte[].class))
+                        .asType(MethodType.methodType(Object.class, Object.class, byte[].class));
+                Class<?> binary = Class.forName("JSONBinary");
+                ENCODE_BINARY = lookup.findStatic(binary, "encode", MethodType.methodType(byte[].class, Object.class));
+                DECODE_BINARY = MethodHandles.filterReturnValue(
+                        lookup.findStatic(binary, "wrap", MethodType.methodType(binary, byte[].class)),
+                        lookup.findVirtual(binary, "toObject", MethodType.methodType(Object.class)));
+                RESET = lookup.findVirtual(parser, "reset", MethodType.methodType(parser, byte[].class))
+                        .asType(MethodType.methodType(Object.class, Object.class, byte[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        static Object fromString(String text) throws Throwable {
+            return FROM_STRING.invokeExact(text);
+        }
+
+        static Object fromBytes(byte[] bytes) throws Throwable {
+            return FROM_BYTES.invokeExact(bytes);
+        }
+
+        static void validate(Object parser) throws Throwable {
+            VALIDATE.invokeExact(parser);
+        }
+
+        static Object parseList(Object parser, Class<?> elementType) throws Throwable {
+            return PARSE_LIST.invokeExact(parser, elementType);
+        }
+
+        static void setCompactObjects(Object parser, boolean compactObjects) throws Throwable {
+            SET_COMPACT_OBJECTS.invokeExact(parser, compactObjects);
+        }
+
+        static void setListener(Object parser, Object listener) throws Throwable {
+            SET_LISTENER.invokeExact(parser, listener);
+        }
+
+        static Object newMetrics() throws Throwable {
+            return NEW_METRICS.invokeExact();
+        }
+
+        static Object newCache(long maxBytes) throws Throwable {
+            return NEW_CACHE.invokeExact(maxBytes);
+        }
+
+        static Object parseCached(Object cache, byte[] bytes) throws Throwable {
+            return PARSE_CACHED.invokeExact(cache, bytes);
+        }
+
+        static byte[] encodeBinary(Object value) throws Throwable {
+            return (byte[]) ENCODE_BINARY.invokeExact(value);
+        }
+
+        static Object decodeBinary(byte[] encoded) throws Throwable {
+            return DECODE_BINARY.invokeExact(encoded);
+        }
+
+        static Object reset(Object parser, byte[] bytes) throws Throwable {
+            return RESET.invokeExact(parser, bytes);
+        }
+
+        static Object parse(Object parser) throws Throwable {
+            return PARSE.invokeExact(parser);
+        }
+
+        static Object parseLazy(Object parser) throws Throwable {
+            return PARSE_LAZY.invokeExact(parser);
+        }
+
+        static Object parseParallel(Object parser) throws Throwable {
+            return PARSE_PARALLEL.invokeExact(parser);
+        }
+    }
+
+    /**
+     * Synthetic payload generators, one per benchmarked shape
+     */
+    static class Payloads {
+
+        static String build(String shape, int megabytes) throws IOException {
+            switch (shape) {
+                case "small":
+                    return "{\"id\":12345,\"name\":\"Leanne Graham\",\"active\":true,\"score\":97.5,"
+                            + "\"tags\":[\"a\",\"b\",\"c\"],\"manager\":null}";
+                case "deep":
+                    return deep(500);
+                case "numbers":
+                    return numbers(100_000);
+                case "strings":
+                    return strings(10_000);
+                case "plain":
+                    return plainStrings(10_000);
+                case "users":
+                    return users(megabytes);
+                default:
+                    throw new IllegalArgumentException("Unknown shape: " + shape);
+            }
+        }
+
+        // Alternating objects and arrays nested to the given depth
+        static String deep(int depth) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                sb.append(i % 2 == 0 ? "{\"level\":" : "[");
+            }
+            sb.append(depth);
+            for (int i = depth - 1; i >= 0; i--) {
+                sb.append(i % 2 == 0 ? "}" : "]");
+            }
+            return sb.toString();
+        }
+
+        // Mix of small ints, longs, decimals and exponents
+        static String numbers(int count) {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                switch (i % 4) {
+                    case 0:
+                        sb.append(i);
+                        break;
+                    case 1:
+                        sb.append(-(long) i * 1_000_000_007L);
+                        break;
+                    case 2:
+                        sb.append(i).append('.').append(i % 1000);
+                        break;
+                    default:
+                        sb.append(i % 97).append(".25e-").append(i % 20);
+                }
+            }
+            return sb.append(']').toString();
+        }
+
+        // Strings where every element carries quote, backslash, control and unicode escapes
+        static String strings(int count) {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("\"line ").append(i)
+                        .append(": \\\"quoted\\\" path C:\\\\tmp\\\\").append(i)
+                        .append("\\n\\tcaf\\u00e9 plain tail text\"");
+            }
+            return sb.append(']').toString();
+        }
+
+        // The strings shape with its escapes spelled out as plain text
+        static String plainStrings(int count) {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("\"line ").append(i)
+                        .append(": quoted path C:/tmp/").append(i)
+                        .append(" tab cafe plain tail text\"");
+            }
+            return sb.append(']').toString();
+        }
+
+        // users.json's records repeated until the array reaches the requested size
+        static String users(int megabytes) throws IOException {
+            Path source = Paths.get("users.json");
+            String json = Files.readString(source).trim();
+            String records = json.substring(1, json.length() - 1).trim();
+
+            long target = megabytes * 1024L * 1024L;
+            StringBuilder sb = new StringBuilder((int) Math.min(target + records.length() + 2, Integer.MAX_VALUE - 8));
+            sb.append('[').append(records);
+            while (sb.length() < target) {
+                sb.append(',').append(records);
+            }
+            return sb.append(']').toString();
+        }
+    }
+}